@@ -0,0 +1,127 @@
+package bang_anas.restful.cache;
+
+import bang_anas.restful.model.SearchContactRequest;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// contact search totals per user and filter, so total=approximate paging skips the COUNT query.
+// ContactListener drops all totals of a user on every contact write, the ttl bounds what a
+// count racing with a write can leave behind
+@Component
+public class ContactCountCache {
+
+    @Value("${contact.count-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${contact.count-cache.ttl-millis:60000}")
+    private long ttlMillis;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    // access ordered, so the eldest entry is the least recently used one
+    private Map<Key, Entry> entries;
+
+    private final Map<String, Set<Key>> keysByUsername = new HashMap<>();
+
+    @PostConstruct
+    void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxSize) {
+                    unindex(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Long get(String username, SearchContactRequest request) {
+        Key key = Key.of(username, request);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+                entries.remove(key);
+                unindex(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.total;
+    }
+
+    public void put(String username, SearchContactRequest request, long total) {
+        Key key = Key.of(username, request);
+        Entry entry = new Entry(total, System.currentTimeMillis() + ttlMillis);
+        synchronized (this) {
+            entries.put(key, entry);
+            keysByUsername.computeIfAbsent(username, ignored -> new HashSet<>()).add(key);
+        }
+    }
+
+    public synchronized void evictUser(String username) {
+        Set<Key> keys = keysByUsername.remove(username);
+        if (keys != null) {
+            keys.forEach(entries::remove);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        keysByUsername.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // callers hold the lock
+    private void unindex(Key key) {
+        Set<Key> keys = keysByUsername.get(key.username);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByUsername.remove(key.username);
+            }
+        }
+    }
+
+    // only the filters decide the total, page and size do not
+    private record Key(String username, String name, String email, String phone, String phoneSuffix,
+                       String domain) {
+
+        static Key of(String username, SearchContactRequest request) {
+            return new Key(username, request.getName(), request.getEmail(), request.getPhone(),
+                    request.getPhoneSuffix(), request.getDomain());
+        }
+    }
+
+    private record Entry(long total, long expiresAt) {
+    }
+}
@@ -0,0 +1,147 @@
+package bang_anas.restful.cache;
+
+import bang_anas.restful.model.ContactResponse;
+import bang_anas.restful.model.SearchContactRequest;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ContactService.search pages per user and request. every entry remembers the version of its
+// user when the query started, ContactListener bumps the version after a contact write commits,
+// so an entry read before the write can never be served after it.
+// memory is bounded by the number of cached contacts over all users, least recently used first
+@Component
+public class ContactSearchCache {
+
+    @Value("${contact.search-cache.max-contacts:100000}")
+    private long maxContacts;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    // access ordered, so the eldest entry is the least recently used one
+    private Map<Key, Entry> entries;
+
+    // contacts held by all entries, one extra per entry for the empty pages
+    private long weight;
+
+    @PostConstruct
+    void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // read before running the query, and pass it to put
+    public long version(String username) {
+        return versions.getOrDefault(username, 0L);
+    }
+
+    public Page<ContactResponse> get(String username, SearchContactRequest request) {
+        Key key = Key.of(username, request);
+        long version = version(username);
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.version != version) {
+                remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.page;
+    }
+
+    public void put(String username, SearchContactRequest request, long version, Page<ContactResponse> page) {
+        // a write committed while the query ran, the page may be stale already
+        if (version != version(username)) {
+            return;
+        }
+
+        Entry entry = new Entry(version, new PageImpl<>(List.copyOf(page.getContent()), page.getPageable(), page.getTotalElements()));
+        synchronized (this) {
+            Entry previous = entries.put(Key.of(username, request), entry);
+            if (previous != null) {
+                weight -= previous.weight();
+            }
+            weight += entry.weight();
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > maxContacts && eldest.hasNext()) {
+                weight -= eldest.next().weight();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidate(String username) {
+        versions.merge(username, 1L, Long::sum);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // callers hold the lock
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight();
+            evictions.incrementAndGet();
+        }
+    }
+
+    // cursor and total are not part of the key, only the exact page/size search is cached
+    private record Key(String username, String name, String email, String phone, String phoneSuffix,
+                       String domain, int page, int size) {
+
+        static Key of(String username, SearchContactRequest request) {
+            return new Key(username, request.getName(), request.getEmail(), request.getPhone(),
+                    request.getPhoneSuffix(), request.getDomain(), request.getPage(), request.getSize());
+        }
+    }
+
+    private record Entry(long version, Page<ContactResponse> page) {
+
+        long weight() {
+            return page.getNumberOfElements() + 1;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package bang_anas.restful.cache;
+
+import bang_anas.restful.entity.User;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// in-process cache of token -> user, so UserArgumentResolver does not hit the database on every request.
+// entries live at most ttl-millis and never longer than the token itself (tokenExpiredAt)
+@Component
+public class TokenCache {
+
+    @Value("${auth.token-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${auth.token-cache.ttl-millis:60000}")
+    private long ttlMillis;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    // access ordered, so the eldest entry is the least recently used one
+    private Map<String, Entry> entries;
+
+    // a user can have several sessions, this finds all cached tokens of one user
+    private final Map<String, Set<String>> tokensByUsername = new HashMap<>();
+
+    @PostConstruct
+    void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    unindex(eldest.getKey(), eldest.getValue());
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // return a copy of the cached user, or null when the token is unknown or the entry has expired
+    public User get(String token) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(token);
+            if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+                remove(token);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return copy(entry.user);
+    }
+
+    public void put(String token, User user, Long tokenExpiredAt) {
+        long now = System.currentTimeMillis();
+        if (token == null || tokenExpiredAt == null || tokenExpiredAt < now) {
+            return;
+        }
+
+        Entry entry = new Entry(copy(user), Math.min(tokenExpiredAt, now + ttlMillis));
+        synchronized (this) {
+            Entry previous = entries.put(token, entry);
+            if (previous != null) {
+                unindex(token, previous);
+            }
+            tokensByUsername.computeIfAbsent(user.getUsername(), key -> new HashSet<>()).add(token);
+        }
+    }
+
+    public synchronized void evict(String token) {
+        if (token != null) {
+            remove(token);
+        }
+    }
+
+    // drop every cached session of a user, after the user row itself changed
+    public synchronized void evictUser(String username) {
+        Set<String> tokens = tokensByUsername.remove(username);
+        if (tokens == null) {
+            return;
+        }
+
+        for (String token : tokens) {
+            if (entries.remove(token) != null) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        tokensByUsername.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // callers hold the lock
+    private void remove(String token) {
+        Entry removed = entries.remove(token);
+        if (removed != null) {
+            unindex(token, removed);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void unindex(String token, Entry entry) {
+        String username = entry.user.getUsername();
+        Set<String> tokens = tokensByUsername.get(username);
+        if (tokens != null) {
+            tokens.remove(token);
+            if (tokens.isEmpty()) {
+                tokensByUsername.remove(username);
+            }
+        }
+    }
+
+    // cached users are detached snapshots, every caller gets its own copy so nobody mutates the shared one
+    private static User copy(User user) {
+        return new User(
+                user.getUsername(),
+                user.getPassword(),
+                user.getName(),
+                user.getToken(),
+                user.getTokenExpiredAt(),
+                null
+        );
+    }
+
+    private record Entry(User user, long expiresAt) {
+    }
+}
@@ -1,15 +1,26 @@
 package bang_anas.restful.controller;
 
 import bang_anas.restful.entity.User;
+import bang_anas.restful.model.AddressCountResponse;
 import bang_anas.restful.model.AddressResponse;
+import bang_anas.restful.model.BulkAddressRequest;
+import bang_anas.restful.model.BulkAddressResponse;
+import bang_anas.restful.model.ContactAddressResponse;
 import bang_anas.restful.model.CreateAddressRequest;
+import bang_anas.restful.model.PagingResponse;
+import bang_anas.restful.model.SearchAddressRequest;
 import bang_anas.restful.model.UpdateAddressRequest;
 import bang_anas.restful.model.WebResponse;
+import bang_anas.restful.search.AddressCursor;
+import bang_anas.restful.service.AddressSearchService;
 import bang_anas.restful.service.AddressService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -18,6 +29,9 @@ public class AddressController {
     @Autowired
     private AddressService addressService;
 
+    @Autowired
+    private AddressSearchService addressSearchService;
+
 
     @PostMapping(
             path = "/api/contacts/{contactId}/addresses",
@@ -90,11 +104,111 @@ public class AddressController {
             path = "/api/contacts/{contactId}/addresses",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    private WebResponse<List<AddressResponse>> list(User user, @PathVariable("contactId") String contactId) {
+    private WebResponse<List<AddressResponse>> list(User user, @PathVariable("contactId") String contactId,
+                                                    @RequestParam(value = "size", required = false) Integer size,
+                                                    @RequestParam(value = "cursor", required = false) String cursor) {
+
+        Slice<AddressResponse> slice = addressService.list(user, contactId, cursor, size);
+        List<AddressResponse> content = slice.getContent();
+
+        return WebResponse.<List<AddressResponse>>builder()
+                .data(content)
+                .paging(PagingResponse.builder()
+                        .size(slice.getSize())
+                        .totalKind(PagingResponse.TOTAL_HAS_MORE)
+                        .hasMore(slice.hasNext())
+                        .next(slice.hasNext() ? new AddressCursor(content.getLast().getId()).encode() : null)
+                        .build())
+                .build();
+    }
+
+    // Accept: application/x-ndjson streams every address instead of one page
+    @GetMapping(
+            path = "/api/contacts/{contactId}/addresses",
+            produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    private void stream(User user, @PathVariable("contactId") String contactId,
+                        HttpServletResponse response) throws IOException {
 
-        List<AddressResponse> addressResponses = addressService.list(user,contactId);
+        addressService.checkContact(user, contactId);
 
-        return WebResponse.<List<AddressResponse>>builder().data(addressResponses).build();
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        addressService.stream(user, contactId, response.getOutputStream());
+    }
+
+    @PostMapping(
+            path = "/api/contacts/{contactId}/addresses/bulk",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE
+    )
+    private WebResponse<BulkAddressResponse> bulk(User user, @RequestBody BulkAddressRequest request,
+                                                  @PathVariable("contactId") String contactId) {
+
+        request.setContactId(contactId);
+        BulkAddressResponse bulkAddressResponse = addressService.bulk(user, request);
+
+        return WebResponse.<BulkAddressResponse>builder().data(bulkAddressResponse).build();
+    }
+
+    @GetMapping(
+            path = "/api/addresses",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    private WebResponse<List<ContactAddressResponse>> search(User user,
+                                                             @RequestParam(value = "city", required = false) String city,
+                                                             @RequestParam(value = "province", required = false) String province,
+                                                             @RequestParam(value = "country", required = false) String country,
+                                                             @RequestParam(value = "postalCode", required = false) String postalCode,
+                                                             @RequestParam(value = "size", required = false, defaultValue = "10") Integer size,
+                                                             @RequestParam(value = "cursor", required = false) String cursor) {
+
+        SearchAddressRequest request = SearchAddressRequest.builder()
+                .city(city)
+                .province(province)
+                .country(country)
+                .postalCode(postalCode)
+                .size(size)
+                .cursor(cursor)
+                .build();
+
+        Slice<ContactAddressResponse> slice = addressSearchService.search(user, request);
+        List<ContactAddressResponse> content = slice.getContent();
+
+        return WebResponse.<List<ContactAddressResponse>>builder()
+                .data(content)
+                .paging(PagingResponse.builder()
+                        .size(slice.getSize())
+                        .totalKind(PagingResponse.TOTAL_HAS_MORE)
+                        .hasMore(slice.hasNext())
+                        .next(slice.hasNext() ? new AddressCursor(content.getLast().getId()).encode() : null)
+                        .build())
+                .build();
+    }
+
+    @GetMapping(
+            path = "/api/addresses/counts",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    private WebResponse<List<AddressCountResponse>> counts(User user,
+                                                           @RequestParam(value = "by", required = false, defaultValue = AddressSearchService.BY_CITY) String by,
+                                                           @RequestParam(value = "city", required = false) String city,
+                                                           @RequestParam(value = "province", required = false) String province,
+                                                           @RequestParam(value = "country", required = false) String country,
+                                                           @RequestParam(value = "postalCode", required = false) String postalCode,
+                                                           @RequestParam(value = "limit", required = false, defaultValue = "20") Integer limit) {
+
+        SearchAddressRequest request = SearchAddressRequest.builder()
+                .city(city)
+                .province(province)
+                .country(country)
+                .postalCode(postalCode)
+                .build();
+
+        List<AddressCountResponse> counts = addressSearchService.count(user, by, request, limit);
+
+        return WebResponse.<List<AddressCountResponse>>builder().data(counts).build();
     }
 
 }
@@ -5,11 +5,13 @@ import bang_anas.restful.model.LoginUserRequest;
 import bang_anas.restful.model.TokenResponse;
 import bang_anas.restful.model.WebResponse;
 import bang_anas.restful.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -23,8 +25,8 @@ public class AuthController {
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public WebResponse<TokenResponse> login(@RequestBody LoginUserRequest request) {
-        TokenResponse tokenResponse = authService.login(request);
+    public WebResponse<TokenResponse> login(@RequestBody LoginUserRequest request, HttpServletRequest servletRequest) {
+        TokenResponse tokenResponse = authService.login(request, servletRequest.getRemoteAddr());
         return WebResponse.<TokenResponse>builder().data(tokenResponse).build();
     }
 
@@ -32,8 +34,8 @@ public class AuthController {
             path = "/api/auth/logout",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public WebResponse<String> logout(User user){
-        authService.logout(user);
+    public WebResponse<String> logout(User user, @RequestHeader("X-API-TOKEN") String token){
+        authService.logout(user, token);
         return WebResponse.<String>builder().data("oke").build();
     }
 }
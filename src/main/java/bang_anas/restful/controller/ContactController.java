@@ -2,13 +2,23 @@ package bang_anas.restful.controller;
 
 import bang_anas.restful.entity.User;
 import bang_anas.restful.model.*;
+import bang_anas.restful.search.ContactCursor;
+import bang_anas.restful.service.ContactExportService;
+import bang_anas.restful.service.ContactImportService;
 import bang_anas.restful.service.ContactService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -17,6 +27,12 @@ public class ContactController {
     @Autowired
     private ContactService contactService;
 
+    @Autowired
+    private ContactExportService contactExportService;
+
+    @Autowired
+    private ContactImportService contactImportService;
+
 
     @PostMapping(
             path = "/api/contacts",
@@ -35,11 +51,16 @@ public class ContactController {
             path = "/api/contacts/{contactId}",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    private WebResponse<ContactResponse> get(User user, @PathVariable("contactId") String contactId) {
+    private WebResponse<ContactResponse> get(User user,
+                                             @PathVariable("contactId") String contactId,
+                                             @RequestParam(value = "expand", required = false) String expand) {
         ContactResponse contactResponse = contactService.get(
                 user,
                 contactId
         );
+        if (expandAddresses(expand)) {
+            contactResponse = contactService.withAddresses(List.of(contactResponse)).getFirst();
+        }
         return WebResponse.<ContactResponse>builder().data(contactResponse).build();
     }
 
@@ -75,6 +96,58 @@ public class ContactController {
         return WebResponse.<String>builder().data("oke").build();
     }
 
+    @GetMapping(
+            path = "/api/contacts/autocomplete",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<List<ContactResponse>> autocomplete(User user,
+                                                           @RequestParam(value = "prefix") String prefix,
+                                                           @RequestParam(value = "limit", required = false, defaultValue = "10") Integer limit) {
+        List<ContactResponse> contactResponses = contactService.autocomplete(user, prefix, limit);
+        return WebResponse.<List<ContactResponse>>builder().data(contactResponses).build();
+    }
+
+    @GetMapping(
+            path = "/api/contacts/domains",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<List<DomainCountResponse>> domains(User user,
+                                                          @RequestParam(value = "domain", required = false) String domain,
+                                                          @RequestParam(value = "limit", required = false, defaultValue = "20") Integer limit) {
+        List<DomainCountResponse> counts = domain != null
+                ? List.of(contactService.countByDomain(user, domain))
+                : contactService.countByDomain(user, limit);
+        return WebResponse.<List<DomainCountResponse>>builder().data(counts).build();
+    }
+
+    // the body is read while importing, see ContactImportService
+    @PostMapping(
+            path = "/api/contacts/import",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<ImportContactResponse> importContacts(User user, HttpServletRequest request) throws IOException {
+        ImportContactResponse response = contactImportService.importContacts(user, request.getInputStream());
+        return WebResponse.<ImportContactResponse>builder().data(response).build();
+    }
+
+    // streamed straight to the response, see ContactExportService
+    @GetMapping(path = "/api/contacts/export")
+    public void export(User user,
+                       @RequestParam(value = "format", required = false, defaultValue = ContactExportService.NDJSON) String format,
+                       @RequestParam(value = "addresses", required = false, defaultValue = "false") boolean addresses,
+                       HttpServletResponse response) throws IOException {
+
+        // before the body starts, so a bad format still gets a normal json error
+        contactExportService.validateFormat(format);
+
+        response.setContentType(ContactExportService.CSV.equals(format) ? "text/csv" : "application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"contacts." + format + "\"");
+
+        contactExportService.export(user, format, addresses, response.getOutputStream());
+    }
+
     @GetMapping(
             path = "/api/contacts",
             produces = MediaType.APPLICATION_JSON_VALUE
@@ -83,26 +156,85 @@ public class ContactController {
                                                      @RequestParam(value = "name", required = false) String name,
                                                      @RequestParam(value = "email", required = false) String email,
                                                      @RequestParam(value = "phone", required = false) String phone,
+                                                     @RequestParam(value = "phoneSuffix", required = false) String phoneSuffix,
+                                                     @RequestParam(value = "domain", required = false) String domain,
                                                      @RequestParam(value = "page", required = false, defaultValue = "0") Integer page,
-                                                     @RequestParam(value = "size", required = false, defaultValue = "10") Integer size) {
+                                                     @RequestParam(value = "size", required = false, defaultValue = "10") Integer size,
+                                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                                     @RequestParam(value = "total", required = false, defaultValue = PagingResponse.TOTAL_EXACT) String total,
+                                                     @RequestParam(value = "expand", required = false) String expand) {
+
+        boolean addresses = expandAddresses(expand);
 
         SearchContactRequest request = SearchContactRequest.builder()
                 .name(name)
                 .email(email)
                 .phone(phone)
+                .phoneSuffix(phoneSuffix)
+                .domain(domain)
                 .page(page)
                 .size(size)
+                .cursor(cursor)
                 .build();
 
-        Page<ContactResponse> contactResponses = contactService.search(user,request);
+        if (cursor != null) {
+            Slice<ContactResponse> slice = contactService.searchAfter(user, request);
+            List<ContactResponse> content = slice.getContent();
+            String next = slice.hasNext()
+                    ? new ContactCursor(content.getLast().getFirstName(), content.getLast().getId()).encode()
+                    : null;
+
+            return WebResponse.<List<ContactResponse>>builder()
+                    .data(addresses ? contactService.withAddresses(content) : content)
+                    .paging(PagingResponse.builder()
+                            .size(slice.getSize())
+                            .totalKind(PagingResponse.TOTAL_HAS_MORE)
+                            .hasMore(slice.hasNext())
+                            .next(next)
+                            .build())
+                    .build();
+        }
+
+        if (PagingResponse.TOTAL_HAS_MORE.equals(total) || PagingResponse.TOTAL_NONE.equals(total)) {
+            boolean hasMore = PagingResponse.TOTAL_HAS_MORE.equals(total);
+            Slice<ContactResponse> slice = contactService.searchWithoutCount(user, request, hasMore);
+
+            return WebResponse.<List<ContactResponse>>builder()
+                    .data(addresses ? contactService.withAddresses(slice.getContent()) : slice.getContent())
+                    .paging(PagingResponse.builder()
+                            .currentPage(slice.getNumber())
+                            .size(slice.getSize())
+                            .totalKind(total)
+                            .hasMore(hasMore ? slice.hasNext() : null)
+                            .build())
+                    .build();
+        }
+
+        Page<ContactResponse> contactResponses = switch (total) {
+            case PagingResponse.TOTAL_EXACT -> contactService.search(user, request);
+            case PagingResponse.TOTAL_APPROXIMATE -> contactService.searchApproximate(user, request);
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unknown total " + total);
+        };
 
         return WebResponse.<List<ContactResponse>>builder()
-                .data(contactResponses.getContent())
+                .data(addresses ? contactService.withAddresses(contactResponses.getContent()) : contactResponses.getContent())
                 .paging(PagingResponse.builder()
                                 .currentPage(contactResponses.getNumber())
                                 .totalPage(contactResponses.getTotalPages())
                                 .size(contactResponses.getSize())
+                                .totalKind(total)
                                 .build())
                 .build();
     }
+
+    // expand=addresses embeds the addresses of every returned contact
+    private boolean expandAddresses(String expand) {
+        if (expand == null || expand.isBlank()) {
+            return false;
+        }
+        if (!"addresses".equals(expand.strip())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unknown expand " + expand);
+        }
+        return true;
+    }
 }
@@ -1,6 +1,7 @@
 package bang_anas.restful.controller;
 
 import bang_anas.restful.model.WebResponse;
+import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -23,4 +24,11 @@ public class ErrorController {
                 .body(WebResponse.<String>builder().errors(exception.getReason()).build());
     }
 
+    // the signed token user is a lazy reference, it fails on first read when the user was deleted
+    @ExceptionHandler(EntityNotFoundException.class)
+    public ResponseEntity<WebResponse<String>> entityNotFoundException (EntityNotFoundException exception){
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(WebResponse.<String>builder().errors("Unauthorized").build());
+    }
+
 }
@@ -32,4 +32,15 @@ public class Address {
     @JoinColumn(name = "contact_id", referencedColumnName = "id")
     private Contact contact;
 
+    // owner of the contact, copied here so the address search filters and sorts on addresses alone
+    private String username;
+
+    // callers holding only a contact reference set username themselves, so the contact is not loaded
+    @PrePersist
+    void fillUsername() {
+        if (username == null && contact != null) {
+            username = contact.getUser().getUsername();
+        }
+    }
+
 }
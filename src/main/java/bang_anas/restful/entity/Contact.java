@@ -1,6 +1,9 @@
 package bang_anas.restful.entity;
 
+import bang_anas.restful.search.EmailDomains;
+import bang_anas.restful.search.PhoneNumbers;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -14,6 +17,7 @@ import java.util.List;
 @NoArgsConstructor
 @Entity
 @Table(name = "contacts")
+@EntityListeners(ContactListener.class)
 public class Contact {
 
     @Id
@@ -27,12 +31,37 @@ public class Contact {
 
     private String phone;
 
+    // derived from phone by setPhone, see PhoneNumbers
+    @Setter(AccessLevel.NONE)
+    @Column(name = "phone_digits")
+    private String phoneDigits;
+
+    @Setter(AccessLevel.NONE)
+    @Column(name = "phone_reversed")
+    private String phoneReversed;
+
     private String email;
 
+    // derived from email by setEmail, see EmailDomains
+    @Setter(AccessLevel.NONE)
+    @Column(name = "email_domain")
+    private String emailDomain;
+
     @ManyToOne
     @JoinColumn(name = "username", referencedColumnName = "username")
     private User user;
 
     @OneToMany(mappedBy = "contact")
     private List<Address> addresses;
+
+    public void setPhone(String phone) {
+        this.phone = phone;
+        this.phoneDigits = PhoneNumbers.digits(phone);
+        this.phoneReversed = PhoneNumbers.reversed(phone);
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+        this.emailDomain = EmailDomains.of(email);
+    }
 }
@@ -0,0 +1,88 @@
+package bang_anas.restful.entity;
+
+import bang_anas.restful.cache.ContactCountCache;
+import bang_anas.restful.cache.ContactSearchCache;
+import bang_anas.restful.search.ContactAutocomplete;
+import bang_anas.restful.search.ContactSearchIndex;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import jakarta.persistence.PreRemove;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// keep the contact search index in the same transaction as every contact write,
+// forget the cached search totals and pages of the owner, and update its autocomplete
+@Component
+public class ContactListener {
+
+    @Autowired
+    private ContactSearchIndex contactSearchIndex;
+
+    @Autowired
+    private ContactCountCache contactCountCache;
+
+    @Autowired
+    private ContactSearchCache contactSearchCache;
+
+    @Autowired
+    private ContactAutocomplete contactAutocomplete;
+
+    @PostPersist
+    @PostUpdate
+    public void index(Contact contact) {
+        contactSearchIndex.index(contact);
+        afterWrite(contact, false);
+    }
+
+    @PreRemove
+    public void remove(Contact contact) {
+        contactSearchIndex.remove(contact.getId());
+    }
+
+    @PostRemove
+    public void removed(Contact contact) {
+        afterWrite(contact, true);
+    }
+
+    private void afterWrite(Contact contact, boolean removed) {
+        if (contact.getUser() == null) {
+            return;
+        }
+
+        String username = contact.getUser().getUsername();
+        contactCountCache.evictUser(username);
+
+        // values as written, the entity may change again before the commit
+        String contactId = contact.getId();
+        String firstName = contact.getFirstName();
+        String lastName = contact.getLastName();
+
+        // bumping before the commit would let a concurrent search cache the old rows under the new version,
+        // and the autocomplete must not see rows that are rolled back. the version goes first, see ContactAutocomplete
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    contactSearchCache.invalidate(username);
+                    if (status == STATUS_COMMITTED) {
+                        updateAutocomplete(username, contactId, firstName, lastName, removed);
+                    }
+                }
+            });
+        } else {
+            contactSearchCache.invalidate(username);
+            updateAutocomplete(username, contactId, firstName, lastName, removed);
+        }
+    }
+
+    private void updateAutocomplete(String username, String contactId, String firstName, String lastName, boolean removed) {
+        if (removed) {
+            contactAutocomplete.remove(username, contactId);
+        } else {
+            contactAutocomplete.upsert(username, contactId, firstName, lastName);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package bang_anas.restful.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+// one trigram of one searchable field of a contact, written by ContactSearchIndex and
+// read by the contact search as a subquery, field is N (first/last name), E (email) or P (phone)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "contact_ngrams")
+@IdClass(ContactNgram.Key.class)
+public class ContactNgram {
+
+    @Id
+    @Column(name = "contact_id")
+    private String contactId;
+
+    @Id
+    private String field;
+
+    @Id
+    private String gram;
+
+    private String username;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+
+        private String contactId;
+
+        private String field;
+
+        private String gram;
+    }
+}
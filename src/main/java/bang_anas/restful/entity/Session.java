@@ -0,0 +1,36 @@
+package bang_anas.restful.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+// one row per login, so a user can be logged in on several devices and log out of one of them
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "sessions")
+@EntityListeners(SessionListener.class)
+public class Session {
+
+    @Id
+    private String token;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "username", referencedColumnName = "username")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private User user;
+
+    private String device;
+
+    @Column(name = "expired_at")
+    private Long expiredAt;
+
+    @Column(name = "created_at")
+    private Long createdAt;
+}
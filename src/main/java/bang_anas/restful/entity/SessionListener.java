@@ -0,0 +1,29 @@
+package bang_anas.restful.entity;
+
+import bang_anas.restful.cache.TokenCache;
+import bang_anas.restful.security.TokenBloomFilter;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// same as UserListener, for tokens stored in the sessions table
+@Component
+public class SessionListener {
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private TokenBloomFilter tokenBloomFilter;
+
+    @PostPersist
+    public void register(Session session) {
+        tokenBloomFilter.add(session.getToken());
+    }
+
+    @PostRemove
+    public void evict(Session session) {
+        tokenCache.evict(session.getToken());
+    }
+}
@@ -14,6 +14,7 @@ import java.util.List;
 @NoArgsConstructor
 @Entity
 @Table(name = "users")
+@EntityListeners(UserListener.class)
 public class User {
 
     @Id
@@ -0,0 +1,38 @@
+package bang_anas.restful.entity;
+
+import bang_anas.restful.cache.TokenCache;
+import bang_anas.restful.security.TokenBloomFilter;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// keep in-memory token structures in sync with every write on the users table,
+// including writes that do not go through AuthService or UserService
+@Component
+public class UserListener {
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private TokenBloomFilter tokenBloomFilter;
+
+    // jpa allows one callback method per event in a listener class
+    @PostPersist
+    public void register(User user) {
+        tokenBloomFilter.add(user.getToken());
+    }
+
+    @PostUpdate
+    public void update(User user) {
+        tokenBloomFilter.add(user.getToken());
+        tokenCache.evictUser(user.getUsername());
+    }
+
+    @PostRemove
+    public void evict(User user) {
+        tokenCache.evictUser(user.getUsername());
+    }
+}
@@ -0,0 +1,19 @@
+package bang_anas.restful.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AddressCountResponse {
+
+    // the city or the country
+    private String value;
+
+    private Long count;
+
+}
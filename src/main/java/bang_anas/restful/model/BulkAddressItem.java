@@ -0,0 +1,35 @@
+package bang_anas.restful.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class BulkAddressItem {
+
+    public static final String CREATE = "create";
+
+    public static final String UPDATE = "update";
+
+    public static final String DELETE = "delete";
+
+    // create, update or delete
+    private String action;
+
+    // the address to update or delete, ignored on create
+    private String id;
+
+    private String street;
+
+    private String city;
+
+    private String province;
+
+    private String country;
+
+    private String postalCode;
+}
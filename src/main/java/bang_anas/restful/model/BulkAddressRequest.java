@@ -0,0 +1,22 @@
+package bang_anas.restful.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class BulkAddressRequest {
+
+    @JsonIgnore
+    private String contactId;
+
+    // applied in one transaction, every item gets its own result
+    private List<BulkAddressItem> items;
+}
@@ -0,0 +1,27 @@
+package bang_anas.restful.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BulkAddressResponse {
+
+    private Integer created;
+
+    private Integer updated;
+
+    private Integer deleted;
+
+    private Integer failed;
+
+    // one result per item, in request order
+    private List<BulkAddressResult> results;
+
+}
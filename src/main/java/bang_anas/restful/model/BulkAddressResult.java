@@ -0,0 +1,26 @@
+package bang_anas.restful.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class BulkAddressResult {
+
+    // position of the item in the request
+    private Integer index;
+
+    private String action;
+
+    // the new id on create
+    private String id;
+
+    // true when the item was applied, message says why not otherwise
+    private Boolean success;
+
+    private String message;
+}
@@ -0,0 +1,32 @@
+package bang_anas.restful.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ContactAddressResponse {
+
+    private String contactId;
+
+    private String firstName;
+
+    private String lastName;
+
+    private String id;
+
+    private String street;
+
+    private String city;
+
+    private String province;
+
+    private String country;
+
+    private String postalCode;
+
+}
@@ -0,0 +1,19 @@
+package bang_anas.restful.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ImportContactError {
+
+    // position of the record in the request body, from 0
+    private Long index;
+
+    private String message;
+
+}
@@ -0,0 +1,23 @@
+package bang_anas.restful.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ImportContactResponse {
+
+    private Long imported;
+
+    private Long failed;
+
+    // the first errors only, failed has the full count
+    private List<ImportContactError> errors;
+
+}
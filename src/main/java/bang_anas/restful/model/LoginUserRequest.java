@@ -21,4 +21,8 @@ public class LoginUserRequest {
     @Size(max = 100)
     private String password;
 
+    // optional label of the device the session belongs to
+    @Size(max = 100)
+    private String device;
+
 }
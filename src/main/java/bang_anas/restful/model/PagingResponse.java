@@ -11,10 +11,26 @@ import lombok.NoArgsConstructor;
 @Builder
 public class PagingResponse {
 
+    public static final String TOTAL_EXACT = "exact";
+
+    public static final String TOTAL_APPROXIMATE = "approximate";
+
+    public static final String TOTAL_HAS_MORE = "has-more";
+
+    public static final String TOTAL_NONE = "none";
+
     private Integer currentPage;
 
     private Integer totalPage;
 
     private Integer size;
 
+    // exact/approximate = totalPage is filled, has-more = hasMore is filled, none = neither
+    private String totalKind;
+
+    private Boolean hasMore;
+
+    // cursor of the next page in cursor mode, null on the last page
+    private String next;
+
 }
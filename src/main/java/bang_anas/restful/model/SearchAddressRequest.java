@@ -0,0 +1,29 @@
+package bang_anas.restful.model;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class SearchAddressRequest {
+
+    // exact matches, at least one of them for a search
+    private String city;
+
+    private String province;
+
+    private String country;
+
+    private String postalCode;
+
+    @NotNull
+    @Min(1)
+    private Integer size;
+
+    // null or "" = first page
+    private String cursor;
+
+}
@@ -1,5 +1,6 @@
 package bang_anas.restful.model;
 
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
 
@@ -15,10 +16,20 @@ public class SearchContactRequest {
 
     private String phone;
 
+    // last digits of the phone number
+    private String phoneSuffix;
+
+    // exact email domain, like example.com
+    private String domain;
+
     @NotNull
     private Integer page;
 
     @NotNull
+    @Min(1)
     private Integer size;
 
+    // null = page/offset paging, "" = first page in cursor mode
+    private String cursor;
+
 }
@@ -3,13 +3,20 @@ package bang_anas.restful.repository;
 import bang_anas.restful.entity.Address;
 import bang_anas.restful.entity.Contact;
 import bang_anas.restful.model.AddressResponse;
+import bang_anas.restful.repository.projection.AddressView;
+import bang_anas.restful.repository.projection.ContactAddressView;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,4 +27,66 @@ public interface AddressRepository extends JpaRepository<Address, String> {
 
     List<Address> findAllByContact(Contact contact);
 
+    // keyset page in id order, the contact_id index already holds the ids sorted per contact
+    @Query("""
+            select new bang_anas.restful.repository.projection.AddressView(a.id, a.street, a.city, a.province, a.country, a.postalCode)
+            from Address a
+            where a.contact.id = :contactId and a.id > :afterId
+            order by a.id
+            """)
+    List<AddressView> findViewsByContactIdAfter(@Param("contactId") String contactId,
+                                                @Param("afterId") String afterId,
+                                                Pageable pageable);
+
+    @Query("""
+            select new bang_anas.restful.repository.projection.ContactAddressView(
+                a.contact.id, a.id, a.street, a.city, a.province, a.country, a.postalCode)
+            from Address a
+            where a.contact.id in :contactIds
+            """)
+    List<ContactAddressView> findViewsByContactIds(@Param("contactIds") Collection<String> contactIds);
+
+    @Query("""
+            select a.id
+            from Address a
+            where a.contact.id = :contactId and a.id in :ids
+            """)
+    List<String> findIdsByContactIdAndIdIn(@Param("contactId") String contactId,
+                                           @Param("ids") Collection<String> ids);
+
+    // address, contact and owner checked in one statement, the user row is never read
+    @Query("""
+            select new bang_anas.restful.repository.projection.AddressView(a.id, a.street, a.city, a.province, a.country, a.postalCode)
+            from Address a
+            where a.id = :addressId and a.contact.id = :contactId and a.contact.user.username = :username
+            """)
+    Optional<AddressView> findOwnedView(@Param("username") String username,
+                                        @Param("contactId") String contactId,
+                                        @Param("addressId") String addressId);
+
+    // 0 when the address does not exist or is not owned, mysql reports matched (not changed) rows
+    @Modifying
+    @Query(value = """
+            UPDATE addresses a JOIN contacts c ON c.id = a.contact_id
+            SET a.street = :street, a.city = :city, a.province = :province, a.country = :country, a.postal_code = :postalCode
+            WHERE a.id = :addressId AND a.contact_id = :contactId AND c.username = :username
+            """, nativeQuery = true)
+    int updateOwned(@Param("username") String username,
+                    @Param("contactId") String contactId,
+                    @Param("addressId") String addressId,
+                    @Param("street") String street,
+                    @Param("city") String city,
+                    @Param("province") String province,
+                    @Param("country") String country,
+                    @Param("postalCode") String postalCode);
+
+    @Modifying
+    @Query(value = """
+            DELETE a FROM addresses a JOIN contacts c ON c.id = a.contact_id
+            WHERE a.id = :addressId AND a.contact_id = :contactId AND c.username = :username
+            """, nativeQuery = true)
+    int deleteOwned(@Param("username") String username,
+                    @Param("contactId") String contactId,
+                    @Param("addressId") String addressId);
+
 }
@@ -2,14 +2,41 @@ package bang_anas.restful.repository;
 
 import bang_anas.restful.entity.Contact;
 import bang_anas.restful.entity.User;
+import bang_anas.restful.repository.projection.ContactView;
+import bang_anas.restful.repository.projection.DomainCountView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ContactRepository extends JpaRepository<Contact,String>, JpaSpecificationExecutor {
+public interface ContactRepository extends JpaRepository<Contact,String>, JpaSpecificationExecutor<Contact> {
 
     Optional<Contact> findFirstByUserAndId(User user, String id);
+
+    @Query("""
+            select new bang_anas.restful.repository.projection.ContactView(c.id, c.firstName, c.lastName, c.email, c.phone)
+            from Contact c
+            where c.user.username = :username and c.id = :id
+            """)
+    Optional<ContactView> findViewByUsernameAndId(@Param("username") String username, @Param("id") String id);
+
+    boolean existsByUserUsernameAndId(String username, String id);
+
+    // grouped over the (username, email_domain) index, no table rows are read
+    @Query("""
+            select new bang_anas.restful.repository.projection.DomainCountView(c.emailDomain, count(c))
+            from Contact c
+            where c.user.username = :username and c.emailDomain is not null
+            group by c.emailDomain
+            order by count(c) desc, c.emailDomain
+            """)
+    List<DomainCountView> countByDomain(@Param("username") String username, Pageable pageable);
+
+    long countByUserUsernameAndEmailDomain(String username, String emailDomain);
 }
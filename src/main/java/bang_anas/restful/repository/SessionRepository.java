@@ -0,0 +1,34 @@
+package bang_anas.restful.repository;
+
+import bang_anas.restful.entity.Session;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+@Repository
+public interface SessionRepository extends JpaRepository<Session, String> {
+
+    // primary key probe joined with its user, one statement per cache miss
+    @EntityGraph(attributePaths = "user")
+    Optional<Session> findFirstByToken(String token);
+
+    @Query("select s.token from Session s where s.expiredAt > :now")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    Stream<String> streamLiveTokens(@Param("now") long now);
+
+    // one bounded batch of the expired session sweep
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM sessions WHERE expired_at < :now ORDER BY expired_at LIMIT :limit", nativeQuery = true)
+    int deleteExpired(@Param("now") long now, @Param("limit") int limit);
+}
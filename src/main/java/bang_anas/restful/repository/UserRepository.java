@@ -1,12 +1,33 @@
 package bang_anas.restful.repository;
 
 import bang_anas.restful.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface UserRepository extends JpaRepository<User, String> {
 
     // query to get the token
     Optional<User> findFirstByToken (String token);
+
+    // every token that is still valid, streamed row by row (mysql needs fetch size MIN_VALUE for that)
+    @Query("select u.token from User u where u.token is not null and u.tokenExpiredAt > :now")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    Stream<String> streamLiveTokens(@Param("now") long now);
+
+    // one bounded batch of the expired token sweep
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE users SET token = NULL, token_expired_at = NULL WHERE token_expired_at < :now"
+            + " ORDER BY token_expired_at LIMIT :limit",
+            nativeQuery = true)
+    int clearExpiredTokens(@Param("now") long now, @Param("limit") int limit);
 }
@@ -0,0 +1,4 @@
+package bang_anas.restful.repository.projection;
+
+public record AddressCountView(String value, Long count) {
+}
@@ -0,0 +1,6 @@
+package bang_anas.restful.repository.projection;
+
+// an address with the contact it belongs to, one row of the cross contact address search
+public record AddressSearchView(String contactId, String firstName, String lastName, String id, String street,
+                                String city, String province, String country, String postalCode) {
+}
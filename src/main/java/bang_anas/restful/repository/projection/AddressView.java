@@ -0,0 +1,5 @@
+package bang_anas.restful.repository.projection;
+
+// the AddressResponse columns of an address, see ContactView
+public record AddressView(String id, String street, String city, String province, String country, String postalCode) {
+}
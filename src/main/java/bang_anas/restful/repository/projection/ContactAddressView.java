@@ -0,0 +1,6 @@
+package bang_anas.restful.repository.projection;
+
+// AddressView with the id of its contact, for loading the addresses of many contacts at once
+public record ContactAddressView(String contactId, String id, String street, String city, String province,
+                                 String country, String postalCode) {
+}
@@ -0,0 +1,6 @@
+package bang_anas.restful.repository.projection;
+
+// the ContactResponse columns of a contact, selected with a constructor expression so
+// reads skip the managed entity, its snapshot and the user many-to-one
+public record ContactView(String id, String firstName, String lastName, String email, String phone) {
+}
@@ -0,0 +1,5 @@
+package bang_anas.restful.repository.projection;
+
+// number of contacts of a user per email domain
+public record DomainCountView(String domain, Long count) {
+}
@@ -1,7 +1,14 @@
 package bang_anas.restful.resolver;
 
+import bang_anas.restful.cache.TokenCache;
+import bang_anas.restful.entity.Session;
 import bang_anas.restful.entity.User;
+import bang_anas.restful.repository.SessionRepository;
 import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.security.TokenBloomFilter;
+import bang_anas.restful.security.TokenRevocationList;
+import bang_anas.restful.security.TokenSigner;
+import bang_anas.restful.service.TokenActivityService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.MethodParameter;
@@ -20,6 +27,24 @@ public class UserArgumentResolver implements HandlerMethodArgumentResolver {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private TokenBloomFilter tokenBloomFilter;
+
+    @Autowired
+    private TokenSigner tokenSigner;
+
+    @Autowired
+    private TokenRevocationList tokenRevocationList;
+
+    @Autowired
+    private TokenActivityService tokenActivityService;
+
     // check parameter who wants resolve
     @Override
     public boolean supportsParameter(MethodParameter parameter) {
@@ -37,6 +62,34 @@ public class UserArgumentResolver implements HandlerMethodArgumentResolver {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
         }
 
+        if (tokenSigner.isEnabled()){
+            return resolveSignedToken(token);
+        }
+
+        // the cache only holds tokens that were valid when they were loaded, and drops them at tokenExpiredAt
+        User cached = tokenCache.get(token);
+        if (cached != null){
+            return cached;
+        }
+
+        // unknown tokens never reach the database
+        if (!tokenBloomFilter.mightContain(token)){
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
+        }
+
+        Session session = sessionRepository.findFirstByToken(token).orElse(null);
+        if (session != null){
+            if (session.getExpiredAt() < System.currentTimeMillis()){
+                throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
+            }
+
+            // only cache misses report activity, at most once per cache ttl for a busy token
+            tokenActivityService.touch(token, session.getExpiredAt(), null);
+            tokenCache.put(token, session.getUser(), session.getExpiredAt());
+            return session.getUser();
+        }
+
+        // tokens issued before the sessions table are still stored on the users row
         User user = userRepository.findFirstByToken(token).orElseThrow(() ->{
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
         });
@@ -45,6 +98,23 @@ public class UserArgumentResolver implements HandlerMethodArgumentResolver {
             throw  new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
         }
 
+        tokenActivityService.touch(token, user.getTokenExpiredAt(), user.getUsername());
+        tokenCache.put(token, user, user.getTokenExpiredAt());
         return user;
     }
+
+    // signed tokens are checked in memory only, the user is returned as a lazy reference
+    // so the row is loaded only when an endpoint actually reads its fields.
+    // a user deleted since the token was issued fails that read, which ErrorController answers with 401
+    private User resolveSignedToken(String token) {
+        TokenSigner.SignedToken signedToken = tokenSigner.verify(token);
+
+        if (signedToken == null
+                || signedToken.expiredAt() < System.currentTimeMillis()
+                || tokenRevocationList.isRevoked(token)){
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Unauthorized");
+        }
+
+        return userRepository.getReferenceById(signedToken.username());
+    }
 }
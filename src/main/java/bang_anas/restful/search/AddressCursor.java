@@ -0,0 +1,27 @@
+package bang_anas.restful.search;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// position of the last address of a page in id order, sent to clients as base64url(id)
+public record AddressCursor(String id) {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public String encode() {
+        return ENCODER.encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static AddressCursor decode(String cursor) {
+        try {
+            return new AddressCursor(new String(DECODER.decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid cursor");
+        }
+    }
+}
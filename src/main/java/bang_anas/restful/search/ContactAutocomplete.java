@@ -0,0 +1,227 @@
+package bang_anas.restful.search;
+
+import bang_anas.restful.cache.ContactSearchCache;
+import bang_anas.restful.model.ContactResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// type-ahead over contact names. per user a sorted array of (normalized name, contact), one entry for the
+// first and one for the last name, answered with a binary search for the prefix. built on the first
+// request of a user, kept up to date by ContactListener after every commit, dropped when the user is idle
+@Component
+public class ContactAutocomplete {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::key).thenComparing(Entry::contactId);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ContactSearchCache contactSearchCache;
+
+    @Value("${contact.autocomplete.idle-millis:600000}")
+    private long idleMillis;
+
+    @Value("${contact.autocomplete.max-users:1000}")
+    private int maxUsers;
+
+    private final Map<String, UserIndex> indexes = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    // contacts whose first or last name starts with the prefix, in name order
+    public List<ContactResponse> complete(String username, String prefix, int limit) {
+        String key = ContactSearchIndex.normalize(prefix);
+        Entry[] entries = index(username).entries;
+
+        int from = Arrays.binarySearch(entries, new Entry(key, "", null, null), ORDER);
+        if (from < 0) {
+            from = -from - 1;
+        }
+
+        Set<String> seen = new LinkedHashSet<>();
+        List<ContactResponse> responses = new ArrayList<>(limit);
+        for (int i = from; i < entries.length && responses.size() < limit && entries[i].key.startsWith(key); i++) {
+            Entry entry = entries[i];
+            // a contact can match with its first and its last name
+            if (seen.add(entry.contactId)) {
+                responses.add(ContactResponse.builder()
+                        .id(entry.contactId)
+                        .firstName(entry.firstName)
+                        .lastName(entry.lastName)
+                        .build());
+            }
+        }
+        return responses;
+    }
+
+    // called after a contact insert or update committed. compute locks this user's entry only,
+    // the sorted array is patched at binary searched positions, it is never sorted again
+    public void upsert(String username, String contactId, String firstName, String lastName) {
+        indexes.computeIfPresent(username, (key, index) -> {
+            index.remove(contactId);
+            index.add(contactId, firstName, lastName);
+            return index;
+        });
+    }
+
+    // called after a contact delete committed
+    public void remove(String username, String contactId) {
+        indexes.computeIfPresent(username, (key, index) -> {
+            index.remove(contactId);
+            return index;
+        });
+    }
+
+    // for writes that do not go through ContactListener, the index is built again on the next request
+    public void evictUser(String username) {
+        indexes.remove(username);
+    }
+
+    public int size() {
+        return indexes.size();
+    }
+
+    private UserIndex index(String username) {
+        long now = System.currentTimeMillis();
+        evictIdle(now);
+
+        UserIndex index = indexes.get(username);
+        if (index != null) {
+            index.lastUsed = now;
+            return index;
+        }
+
+        // a write committing while loading bumps the version, then the result is used once but not kept.
+        // the check runs inside compute, so it can not slip between the bump and the upsert of that write
+        long version = contactSearchCache.version(username);
+        UserIndex loaded = load(username, now);
+        UserIndex current = indexes.compute(username, (key, existing) -> {
+            if (existing != null) {
+                return existing;
+            }
+            return version == contactSearchCache.version(key) ? loaded : null;
+        });
+
+        if (indexes.size() > maxUsers) {
+            evictLeastRecentlyUsed();
+        }
+        return current != null ? current : loaded;
+    }
+
+    private UserIndex load(String username, long now) {
+        List<Entry> entries = new ArrayList<>();
+        Map<String, Entry[]> byContact = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT id, first_name, last_name FROM contacts WHERE username = ?",
+                resultSet -> {
+                    Entry[] contactEntries = entries(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3));
+                    byContact.put(resultSet.getString(1), contactEntries);
+                    entries.addAll(Arrays.asList(contactEntries));
+                },
+                username);
+
+        Entry[] array = entries.toArray(new Entry[0]);
+        Arrays.sort(array, ORDER);
+        return new UserIndex(array, byContact, now);
+    }
+
+    // at most one sweep per second over all users, not one per request
+    private void evictIdle(long now) {
+        long last = lastSweep.get();
+        if (now - last < 1000 || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        indexes.values().removeIf(index -> now - index.lastUsed > idleMillis);
+    }
+
+    private void evictLeastRecentlyUsed() {
+        List<Map.Entry<String, UserIndex>> byUse = new ArrayList<>(indexes.entrySet());
+        byUse.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+        for (int i = 0; i < byUse.size() - maxUsers; i++) {
+            indexes.remove(byUse.get(i).getKey(), byUse.get(i).getValue());
+        }
+    }
+
+    private static Entry[] entries(String contactId, String firstName, String lastName) {
+        List<Entry> entries = new ArrayList<>(2);
+        if (firstName != null) {
+            entries.add(new Entry(ContactSearchIndex.normalize(firstName), contactId, firstName, lastName));
+        }
+        if (lastName != null) {
+            entries.add(new Entry(ContactSearchIndex.normalize(lastName), contactId, firstName, lastName));
+        }
+        return entries.toArray(new Entry[0]);
+    }
+
+    private record Entry(String key, String contactId, String firstName, String lastName) {
+    }
+
+    // readers take the array without a lock. writers run inside ConcurrentHashMap.compute for the user,
+    // replace the array and keep byContact (the entries of every contact) to find what to remove
+    private static final class UserIndex {
+
+        private volatile Entry[] entries;
+
+        private final Map<String, Entry[]> byContact;
+
+        private volatile long lastUsed;
+
+        private UserIndex(Entry[] entries, Map<String, Entry[]> byContact, long lastUsed) {
+            this.entries = entries;
+            this.byContact = byContact;
+            this.lastUsed = lastUsed;
+        }
+
+        private void add(String contactId, String firstName, String lastName) {
+            Entry[] added = ContactAutocomplete.entries(contactId, firstName, lastName);
+            Entry[] result = entries;
+            for (Entry entry : added) {
+                int at = Arrays.binarySearch(result, entry, ORDER);
+                if (at >= 0) {
+                    continue;
+                }
+                at = -at - 1;
+                Entry[] copy = new Entry[result.length + 1];
+                System.arraycopy(result, 0, copy, 0, at);
+                copy[at] = entry;
+                System.arraycopy(result, at, copy, at + 1, result.length - at);
+                result = copy;
+            }
+            byContact.put(contactId, added);
+            entries = result;
+        }
+
+        private void remove(String contactId) {
+            Entry[] removed = byContact.remove(contactId);
+            if (removed == null) {
+                return;
+            }
+            Entry[] result = entries;
+            for (Entry entry : removed) {
+                int at = Arrays.binarySearch(result, entry, ORDER);
+                if (at < 0) {
+                    continue;
+                }
+                Entry[] copy = new Entry[result.length - 1];
+                System.arraycopy(result, 0, copy, 0, at);
+                System.arraycopy(result, at + 1, copy, at, result.length - at - 1);
+                result = copy;
+            }
+            entries = result;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package bang_anas.restful.search;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// position of the last contact of a page in the (first_name, id) order,
+// sent to clients as base64url(firstName).base64url(id) so they treat it as opaque
+public record ContactCursor(String firstName, String id) {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public String encode() {
+        return ENCODER.encodeToString(firstName.getBytes(StandardCharsets.UTF_8)) + "." +
+                ENCODER.encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ContactCursor decode(String cursor) {
+        int dot = cursor.indexOf('.');
+        if (dot < 0 || cursor.indexOf('.', dot + 1) >= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid cursor");
+        }
+
+        try {
+            return new ContactCursor(
+                    new String(DECODER.decode(cursor.substring(0, dot)), StandardCharsets.UTF_8),
+                    new String(DECODER.decode(cursor.substring(dot + 1)), StandardCharsets.UTF_8)
+            );
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid cursor");
+        }
+    }
+}
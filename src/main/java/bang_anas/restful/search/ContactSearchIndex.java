@@ -0,0 +1,207 @@
+package bang_anas.restful.search;
+
+import bang_anas.restful.entity.Contact;
+import bang_anas.restful.entity.ContactNgram;
+import bang_anas.restful.entity.User;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// trigram index over contact names, email and phone. a LIKE '%term%' can not use a btree index,
+// but every contact matching it contains all trigrams of the term, so the search first narrows
+// the user's contacts to those candidates through (username, field, gram) and only then applies the LIKE
+@Component
+@Slf4j
+public class ContactSearchIndex {
+
+    public static final String NAME = "N";
+
+    public static final String EMAIL = "E";
+
+    public static final String PHONE = "P";
+
+    private static final int GRAM = 3;
+
+    private static final int REBUILD_CHUNK = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // needed once after creating the contact_ngrams table, or to repair it
+    @Value("${contact.search-index.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    // replace the grams of one contact, runs inside the transaction that writes the contact
+    public void index(Contact contact) {
+        remove(contact.getId());
+        insert(rows(contact));
+    }
+
+    // grams of contacts inserted without jpa (bulk import), in the caller's transaction
+    public void indexNew(List<Contact> contacts) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Contact contact : contacts) {
+            rows.addAll(rows(contact));
+        }
+        insert(rows);
+    }
+
+    public void remove(String contactId) {
+        jdbcTemplate.update("DELETE FROM contact_ngrams WHERE contact_id = ?", contactId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            rebuild();
+        }
+    }
+
+    // rebuild the whole index from the contacts table, one transaction per chunk in primary key order
+    public long rebuild() {
+        long start = System.currentTimeMillis();
+        long total = 0;
+        String lastId = "";
+
+        while (true) {
+            List<Contact> chunk = jdbcTemplate.query(
+                    "SELECT id, username, first_name, last_name, email, phone FROM contacts"
+                            + " WHERE id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> {
+                        User user = new User();
+                        user.setUsername(rs.getString("username"));
+
+                        Contact contact = new Contact();
+                        contact.setId(rs.getString("id"));
+                        contact.setUser(user);
+                        contact.setFirstName(rs.getString("first_name"));
+                        contact.setLastName(rs.getString("last_name"));
+                        contact.setEmail(rs.getString("email"));
+                        contact.setPhone(rs.getString("phone"));
+                        return contact;
+                    },
+                    lastId, REBUILD_CHUNK);
+
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            String from = lastId;
+            String to = chunk.get(chunk.size() - 1).getId();
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM contact_ngrams WHERE contact_id > ? AND contact_id <= ?", from, to);
+                List<Object[]> rows = new ArrayList<>();
+                for (Contact contact : chunk) {
+                    rows.addAll(rows(contact));
+                }
+                insert(rows);
+            });
+
+            total += chunk.size();
+            lastId = to;
+            if (chunk.size() < REBUILD_CHUNK) {
+                break;
+            }
+        }
+
+        // grams of contacts that no longer exist past the last id
+        jdbcTemplate.update("DELETE FROM contact_ngrams WHERE contact_id > ?", lastId);
+
+        log.info("contact search index rebuilt for {} contacts in {} ms", total, System.currentTimeMillis() - start);
+        return total;
+    }
+
+    // contact.id IN (contacts of this user whose field has every gram of the term),
+    // or null when the term is too short to have a gram and only the LIKE can decide
+    public Predicate candidates(Root<Contact> root, CriteriaQuery<?> query, CriteriaBuilder builder,
+                                String username, String field, String term) {
+        // LIKE wildcards inside the term match characters the grams can not know about
+        if (term.indexOf('%') >= 0 || term.indexOf('_') >= 0) {
+            return null;
+        }
+
+        Set<String> grams = grams(term);
+        if (grams.isEmpty()) {
+            return null;
+        }
+
+        Subquery<String> subquery = query.subquery(String.class);
+        Root<ContactNgram> ngram = subquery.from(ContactNgram.class);
+        subquery.select(ngram.get("contactId"))
+                .where(
+                        builder.equal(ngram.get("username"), username),
+                        builder.equal(ngram.get("field"), field),
+                        ngram.get("gram").in(grams)
+                )
+                .groupBy(ngram.get("contactId"))
+                .having(builder.equal(builder.countDistinct(ngram.get("gram")), (long) grams.size()));
+
+        return root.get("id").in(subquery);
+    }
+
+    // mysql compares LIKE case and accent insensitive, so grams are lower case without accents
+    static Set<String> grams(String... values) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (String value : values) {
+            if (value == null) {
+                continue;
+            }
+
+            // code points, so a gram never splits a surrogate pair
+            int[] codePoints = normalize(value).codePoints().toArray();
+            for (int i = 0; i + GRAM <= codePoints.length; i++) {
+                grams.add(new String(codePoints, i, GRAM));
+            }
+        }
+        return grams;
+    }
+
+    static String normalize(String value) {
+        return Normalizer.normalize(value, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private List<Object[]> rows(Contact contact) {
+        String username = contact.getUser().getUsername();
+        List<Object[]> rows = new ArrayList<>();
+        addRows(rows, contact.getId(), username, NAME, contact.getFirstName(), contact.getLastName());
+        addRows(rows, contact.getId(), username, EMAIL, contact.getEmail());
+        // phone grams come from the digits, the search looks for digits too
+        addRows(rows, contact.getId(), username, PHONE, PhoneNumbers.digits(contact.getPhone()));
+        return rows;
+    }
+
+    private void addRows(List<Object[]> rows, String contactId, String username, String field, String... values) {
+        for (String gram : grams(values)) {
+            rows.add(new Object[]{contactId, username, field, gram});
+        }
+    }
+
+    private void insert(List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO contact_ngrams (contact_id, username, field, gram) VALUES (?, ?, ?, ?)", rows);
+        }
+    }
+}
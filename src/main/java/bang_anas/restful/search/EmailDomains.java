@@ -0,0 +1,30 @@
+package bang_anas.restful.search;
+
+import java.util.Locale;
+
+// the part after the last @ of an email, lower case, stored next to the email so a domain
+// filter is an exact match on (username, email_domain) instead of a LIKE '%@domain%' scan
+public final class EmailDomains {
+
+    private EmailDomains() {
+    }
+
+    // null when there is no domain
+    public static String of(String email) {
+        if (email == null) {
+            return null;
+        }
+
+        int at = email.lastIndexOf('@');
+        return at < 0 ? null : normalize(email.substring(at + 1));
+    }
+
+    // a domain as typed in a filter, "@Acme.com " is the same as "acme.com"
+    public static String normalize(String domain) {
+        String normalized = domain.strip().toLowerCase(Locale.ROOT);
+        if (normalized.startsWith("@")) {
+            normalized = normalized.substring(1);
+        }
+        return normalized.isEmpty() ? null : normalized;
+    }
+}
@@ -0,0 +1,45 @@
+package bang_anas.restful.search;
+
+// phone numbers are compared on their digits only, so "+62 812-3456" and "0812 3456" look alike.
+// the reversed digits turn "ends with" into a prefix, which a btree index answers with a range scan
+public final class PhoneNumbers {
+
+    private PhoneNumbers() {
+    }
+
+    // null when there is not a single digit
+    public static String digits(String phone) {
+        if (phone == null) {
+            return null;
+        }
+
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.isEmpty() ? null : digits.toString();
+    }
+
+    public static String reversed(String phone) {
+        String digits = digits(phone);
+        return digits == null ? null : new StringBuilder(digits).reverse().toString();
+    }
+
+    // digits of a contains-search term without the leading zeros of a trunk prefix, which the stored
+    // number may write as a country code instead. null when nothing is left to search for
+    public static String searchDigits(String term) {
+        String digits = digits(term);
+        if (digits == null) {
+            return null;
+        }
+
+        int start = 0;
+        while (start < digits.length() && digits.charAt(start) == '0') {
+            start++;
+        }
+        return start == digits.length() ? null : digits.substring(start);
+    }
+}
@@ -0,0 +1,374 @@
+package bang_anas.restful.security;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation-reduced BCrypt, producing bit-for-bit the same hashes as {@link BCrypt}.
+ * <p>
+ * {@link BCrypt} clones the key schedule for every hash and, inside the 2**log_rounds main
+ * loop, allocates small arrays for every word of key material it streams. This variant keeps
+ * the P/S/ciphertext buffers per thread, expands password and salt into key words once per
+ * hash, and builds the result in a reused char buffer instead of a StringBuilder.
+ * <p>
+ * Salts are still generated with {@link BCrypt#gensalt()}.
+ */
+public final class BCryptEngine {
+
+    private static final int BCRYPT_SALT_LEN = 16;
+
+    private static final int BLOWFISH_NUM_ROUNDS = 16;
+
+    private static final int P_LEN = BCrypt.P_orig.length;
+
+    private static final int S_LEN = BCrypt.S_orig.length;
+
+    private static final int C_LEN = BCrypt.bf_crypt_ciphertext.length;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private BCryptEngine() {
+    }
+
+    /**
+     * Hash a password using the OpenBSD bcrypt scheme
+     * @param password the password to hash
+     * @param salt the salt to hash with (perhaps generated using BCrypt.gensalt)
+     * @return the hashed password
+     */
+    public static String hashpw(String password, String salt) {
+        return hashpw(password.getBytes(StandardCharsets.UTF_8), salt, false);
+    }
+
+    /**
+     * Check that a plaintext password matches a previously hashed one
+     * @param plaintext the plaintext password to verify
+     * @param hashed the previously-hashed password
+     * @return true if the passwords match, false otherwise
+     */
+    public static boolean checkpw(String plaintext, String hashed) {
+        byte[] passwordb = plaintext.getBytes(StandardCharsets.UTF_8);
+        return BCrypt.equalsNoEarlyReturn(hashed, hashpw(passwordb, hashed, true));
+    }
+
+    private static String hashpw(byte[] passwordb, String salt, boolean forCheck) {
+        char minor = (char) 0;
+        int off;
+
+        if (salt == null) {
+            throw new IllegalArgumentException("salt cannot be null");
+        }
+
+        int saltLength = salt.length();
+
+        if (saltLength < 28) {
+            throw new IllegalArgumentException("Invalid salt");
+        }
+
+        if (salt.charAt(0) != '$' || salt.charAt(1) != '2') {
+            throw new IllegalArgumentException("Invalid salt version");
+        }
+        if (salt.charAt(2) == '$') {
+            off = 3;
+        }
+        else {
+            minor = salt.charAt(2);
+            if ((minor != 'a' && minor != 'x' && minor != 'y' && minor != 'b') || salt.charAt(3) != '$') {
+                throw new IllegalArgumentException("Invalid salt revision");
+            }
+            off = 4;
+        }
+
+        if (salt.charAt(off + 2) > '$') {
+            throw new IllegalArgumentException("Missing salt rounds");
+        }
+
+        if (off == 4 && saltLength < 29) {
+            throw new IllegalArgumentException("Invalid salt");
+        }
+        int logRounds = Integer.parseInt(salt, off, off + 2, 10);
+
+        State state = STATE.get();
+        int saltBytes = decodeSalt(salt, off + 3, state.salt);
+
+        // revisions a, b and y hash the terminating NUL byte of the password as well
+        int keyLength = minor >= 'a' ? passwordb.length + 1 : passwordb.length;
+
+        cryptRaw(state, passwordb, keyLength, saltBytes, logRounds, minor == 'x', minor == 'a' ? 0x10000 : 0, forCheck);
+
+        char[] out = state.out;
+        int pos = 0;
+        out[pos++] = '$';
+        out[pos++] = '2';
+        if (minor >= 'a') {
+            out[pos++] = minor;
+        }
+        out[pos++] = '$';
+        out[pos++] = (char) ('0' + logRounds / 10);
+        out[pos++] = (char) ('0' + logRounds % 10);
+        out[pos++] = '$';
+        pos = encodeBase64(state.salt, BCRYPT_SALT_LEN, out, pos);
+        pos = encodeBase64(state.hash, C_LEN * 4 - 1, out, pos);
+        return new String(out, 0, pos);
+    }
+
+    private static void cryptRaw(State state, byte[] password, int keyLength, int saltBytes, int logRounds,
+                                 boolean signExtBug, int safety, boolean forCheck) {
+        long rounds;
+        if (logRounds < 4 || logRounds > 31) {
+            if (!forCheck || logRounds != 0) {
+                throw new IllegalArgumentException("Bad number of rounds");
+            }
+            rounds = 0;
+        }
+        else {
+            rounds = 1L << logRounds;
+        }
+
+        if (saltBytes != BCRYPT_SALT_LEN) {
+            throw new IllegalArgumentException("Bad salt length");
+        }
+
+        int[] P = state.P;
+        int[] S = state.S;
+        int[] lr = state.lr;
+        System.arraycopy(BCrypt.P_orig, 0, P, 0, P_LEN);
+        System.arraycopy(BCrypt.S_orig, 0, S, 0, S_LEN);
+
+        // the key streams restart at offset 0 on every key() call, so their words never change
+        int sign = expandKey(password, keyLength, state.keyWords, state.keyWordsBug);
+        int[] keyWords = signExtBug ? state.keyWordsBug : state.keyWords;
+        // the 16 byte salt is exactly 4 words, so its stream repeats every 4 words
+        int[] saltWords = state.saltWords;
+        byte[] salt = state.salt;
+        for (int i = 0; i < P_LEN; i++) {
+            int b = (i & 3) * 4;
+            saltWords[i] = (salt[b] & 0xff) << 24 | (salt[b + 1] & 0xff) << 16
+                    | (salt[b + 2] & 0xff) << 8 | (salt[b + 3] & 0xff);
+        }
+
+        ekskey(P, S, lr, state.keyWords, state.keyWordsBug, keyWords, saltWords, sign, safety);
+        for (long i = 0; i < rounds; i++) {
+            key(P, S, lr, keyWords);
+            key(P, S, lr, saltWords);
+        }
+
+        int[] cdata = state.cdata;
+        System.arraycopy(BCrypt.bf_crypt_ciphertext, 0, cdata, 0, C_LEN);
+        for (int i = 0; i < 64; i++) {
+            for (int j = 0; j < (C_LEN >> 1); j++) {
+                encipher(P, S, cdata, j << 1);
+            }
+        }
+
+        byte[] hash = state.hash;
+        for (int i = 0, j = 0; i < C_LEN; i++) {
+            hash[j++] = (byte) ((cdata[i] >> 24) & 0xff);
+            hash[j++] = (byte) ((cdata[i] >> 16) & 0xff);
+            hash[j++] = (byte) ((cdata[i] >> 8) & 0xff);
+            hash[j++] = (byte) (cdata[i] & 0xff);
+        }
+    }
+
+    /**
+     * Expand the cyclic password stream into the words xored into P, both the correct ones
+     * and the ones produced by the sign extension bug of revision x
+     * @return the non-benign sign extension flag
+     */
+    private static int expandKey(byte[] password, int keyLength, int[] correct, int[] buggy) {
+        int off = 0;
+        int sign = 0;
+        for (int w = 0; w < P_LEN; w++) {
+            int c = 0;
+            int b = 0;
+            for (int i = 0; i < 4; i++) {
+                byte value = off < password.length ? password[off] : 0;
+                c = (c << 8) | (value & 0xff);
+                b = (b << 8) | value;
+                if (i > 0) {
+                    sign |= b & 0x80;
+                }
+                off = (off + 1) % keyLength;
+            }
+            correct[w] = c;
+            buggy[w] = b;
+        }
+        return sign;
+    }
+
+    // same as BCrypt.ekskey, with the key material already expanded to words
+    private static void ekskey(int[] P, int[] S, int[] lr, int[] correct, int[] buggy, int[] keyWords,
+                               int[] saltWords, int sign, int safety) {
+        int diff = 0;
+        for (int i = 0; i < P_LEN; i++) {
+            diff |= correct[i] ^ buggy[i];
+            P[i] ^= keyWords[i];
+        }
+
+        diff |= diff >> 16;
+        diff &= 0xffff;
+        diff += 0xffff;
+        sign <<= 9;
+        sign &= ~diff & safety;
+        P[0] ^= sign;
+
+        int d = 0;
+        lr[0] = 0;
+        lr[1] = 0;
+        for (int i = 0; i < P_LEN; i += 2) {
+            lr[0] ^= saltWords[d++ & 3];
+            lr[1] ^= saltWords[d++ & 3];
+            encipher(P, S, lr, 0);
+            P[i] = lr[0];
+            P[i + 1] = lr[1];
+        }
+
+        for (int i = 0; i < S_LEN; i += 2) {
+            lr[0] ^= saltWords[d++ & 3];
+            lr[1] ^= saltWords[d++ & 3];
+            encipher(P, S, lr, 0);
+            S[i] = lr[0];
+            S[i + 1] = lr[1];
+        }
+    }
+
+    // same as BCrypt.key, with the key material already expanded to words
+    private static void key(int[] P, int[] S, int[] lr, int[] words) {
+        for (int i = 0; i < P_LEN; i++) {
+            P[i] ^= words[i];
+        }
+
+        lr[0] = 0;
+        lr[1] = 0;
+        for (int i = 0; i < P_LEN; i += 2) {
+            encipher(P, S, lr, 0);
+            P[i] = lr[0];
+            P[i + 1] = lr[1];
+        }
+
+        for (int i = 0; i < S_LEN; i += 2) {
+            encipher(P, S, lr, 0);
+            S[i] = lr[0];
+            S[i + 1] = lr[1];
+        }
+    }
+
+    private static void encipher(int[] P, int[] S, int[] lr, int off) {
+        int i, n, l = lr[off], r = lr[off + 1];
+
+        l ^= P[0];
+        for (i = 0; i <= BLOWFISH_NUM_ROUNDS - 2;) {
+            // Feistel substitution on left word
+            n = S[(l >> 24) & 0xff];
+            n += S[0x100 | ((l >> 16) & 0xff)];
+            n ^= S[0x200 | ((l >> 8) & 0xff)];
+            n += S[0x300 | (l & 0xff)];
+            r ^= n ^ P[++i];
+
+            // Feistel substitution on right word
+            n = S[(r >> 24) & 0xff];
+            n += S[0x100 | ((r >> 16) & 0xff)];
+            n ^= S[0x200 | ((r >> 8) & 0xff)];
+            n += S[0x300 | (r & 0xff)];
+            l ^= n ^ P[++i];
+        }
+        lr[off] = r ^ P[BLOWFISH_NUM_ROUNDS + 1];
+        lr[off + 1] = l;
+    }
+
+    // same as BCrypt.decode_base64 on the 22 salt characters starting at off, into a reused buffer
+    private static int decodeSalt(String s, int start, byte[] out) {
+        int off = start, slen = start + 22, olen = 0;
+        byte c1, c2, c3, c4, o;
+
+        while (off < slen - 1 && olen < BCRYPT_SALT_LEN) {
+            c1 = char64(s.charAt(off++));
+            c2 = char64(s.charAt(off++));
+            if (c1 == -1 || c2 == -1) {
+                break;
+            }
+            o = (byte) (c1 << 2);
+            o |= (c2 & 0x30) >> 4;
+            out[olen] = o;
+            if (++olen >= BCRYPT_SALT_LEN || off >= slen) {
+                break;
+            }
+            c3 = char64(s.charAt(off++));
+            if (c3 == -1) {
+                break;
+            }
+            o = (byte) ((c2 & 0x0f) << 4);
+            o |= (c3 & 0x3c) >> 2;
+            out[olen] = o;
+            if (++olen >= BCRYPT_SALT_LEN || off >= slen) {
+                break;
+            }
+            c4 = char64(s.charAt(off++));
+            o = (byte) ((c3 & 0x03) << 6);
+            o |= c4;
+            out[olen] = o;
+            ++olen;
+        }
+        return olen;
+    }
+
+    private static byte char64(char x) {
+        if (x >= BCrypt.index_64.length) {
+            return -1;
+        }
+        return BCrypt.index_64[x];
+    }
+
+    // same as BCrypt.encode_base64, writing into a char buffer
+    private static int encodeBase64(byte[] d, int len, char[] out, int pos) {
+        char[] code = BCrypt.base64_code;
+        int off = 0;
+        int c1, c2;
+
+        while (off < len) {
+            c1 = d[off++] & 0xff;
+            out[pos++] = code[(c1 >> 2) & 0x3f];
+            c1 = (c1 & 0x03) << 4;
+            if (off >= len) {
+                out[pos++] = code[c1 & 0x3f];
+                break;
+            }
+            c2 = d[off++] & 0xff;
+            c1 |= (c2 >> 4) & 0x0f;
+            out[pos++] = code[c1 & 0x3f];
+            c1 = (c2 & 0x0f) << 2;
+            if (off >= len) {
+                out[pos++] = code[c1 & 0x3f];
+                break;
+            }
+            c2 = d[off++] & 0xff;
+            c1 |= (c2 >> 6) & 0x03;
+            out[pos++] = code[c1 & 0x3f];
+            out[pos++] = code[c2 & 0x3f];
+        }
+        return pos;
+    }
+
+    // per thread buffers, sized for one hash at a time
+    private static final class State {
+
+        private final int[] P = new int[P_LEN];
+
+        private final int[] S = new int[S_LEN];
+
+        private final int[] lr = new int[2];
+
+        private final int[] cdata = new int[C_LEN];
+
+        private final int[] keyWords = new int[P_LEN];
+
+        private final int[] keyWordsBug = new int[P_LEN];
+
+        private final int[] saltWords = new int[P_LEN];
+
+        private final byte[] salt = new byte[BCRYPT_SALT_LEN];
+
+        private final byte[] hash = new byte[C_LEN * 4];
+
+        private final char[] out = new char[64];
+    }
+}
@@ -0,0 +1,147 @@
+package bang_anas.restful.security;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// token buckets per username and per client address, checked before any database or bcrypt work on login.
+// buckets live in lock striped, access ordered maps: idle buckets are dropped from the head as keys are
+// touched, and every stripe has a hard size limit so a flood of distinct keys can not grow memory
+@Component
+public class LoginRateLimiter {
+
+    private static final int STRIPES = 64;
+
+    @Value("${auth.login-limit.username.capacity:10}")
+    private int usernameCapacity;
+
+    @Value("${auth.login-limit.username.per-minute:10}")
+    private int usernamePerMinute;
+
+    @Value("${auth.login-limit.address.capacity:100}")
+    private int addressCapacity;
+
+    @Value("${auth.login-limit.address.per-minute:600}")
+    private int addressPerMinute;
+
+    @Value("${auth.login-limit.idle-millis:600000}")
+    private long idleMillis;
+
+    @Value("${auth.login-limit.max-keys:1000000}")
+    private int maxKeys;
+
+    private Limiter usernames;
+
+    private Limiter addresses;
+
+    @PostConstruct
+    void init() {
+        usernames = new Limiter(usernameCapacity, usernamePerMinute);
+        addresses = new Limiter(addressCapacity, addressPerMinute);
+    }
+
+    public boolean tryAcquire(String username, String clientAddress) {
+        if (clientAddress != null && !addresses.tryAcquire(clientAddress)) {
+            return false;
+        }
+        return username == null || usernames.tryAcquire(username.toLowerCase(Locale.ROOT));
+    }
+
+    public int size() {
+        return usernames.size() + addresses.size();
+    }
+
+    private final class Limiter {
+
+        private final int capacity;
+
+        private final double tokensPerNano;
+
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        private Limiter(int capacity, int perMinute) {
+            this.capacity = capacity;
+            this.tokensPerNano = perMinute / 60_000_000_000.0;
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe(Math.max(1, maxKeys / STRIPES));
+            }
+        }
+
+        boolean tryAcquire(String key) {
+            Stripe stripe = stripes[(key.hashCode() & Integer.MAX_VALUE) % STRIPES];
+            long now = System.nanoTime();
+
+            synchronized (stripe) {
+                stripe.evictIdle(now);
+
+                Bucket bucket = stripe.buckets.get(key);
+                if (bucket == null) {
+                    bucket = new Bucket(capacity, now);
+                    stripe.buckets.put(key, bucket);
+                } else {
+                    bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.lastNanos) * tokensPerNano);
+                    bucket.lastNanos = now;
+                }
+
+                if (bucket.tokens < 1) {
+                    return false;
+                }
+                bucket.tokens--;
+                return true;
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    size += stripe.buckets.size();
+                }
+            }
+            return size;
+        }
+    }
+
+    private final class Stripe {
+
+        private final LinkedHashMap<String, Bucket> buckets;
+
+        private Stripe(int maxSize) {
+            this.buckets = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        // the head of an access ordered map is the least recently used bucket, stop at the first active one
+        void evictIdle(long now) {
+            long idleNanos = idleMillis * 1_000_000;
+            Iterator<Bucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().lastNanos < idleNanos) {
+                    return;
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Bucket {
+
+        private double tokens;
+
+        private long lastNanos;
+
+        private Bucket(double tokens, long lastNanos) {
+            this.tokens = tokens;
+            this.lastNanos = lastNanos;
+        }
+    }
+}
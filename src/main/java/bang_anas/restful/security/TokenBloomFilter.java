@@ -0,0 +1,204 @@
+package bang_anas.restful.security;
+
+import bang_anas.restful.repository.SessionRepository;
+import bang_anas.restful.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+// probabilistic set of live tokens. a negative answer is exact, so unknown tokens can be
+// rejected before UserArgumentResolver touches the connection pool.
+// bloom filters cannot delete, tokens removed by logout stay in the filter until the next rebuild
+@Component
+@Slf4j
+public class TokenBloomFilter {
+
+    private static final long REBUILD_GRACE_MILLIS = 60_000;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Value("${auth.token-filter.expected-tokens:1000000}")
+    private int expectedTokens;
+
+    @Value("${auth.token-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private volatile Bits current;
+
+    // while a rebuild runs new tokens go to both filters, so none are lost on swap
+    private volatile Bits rebuilding;
+
+    // a token flushed just before a rebuild started may commit after the rebuild read the table,
+    // so the old filter is still consulted for a short grace period after the swap
+    private volatile Bits previous;
+
+    private volatile long previousUntil;
+
+    // until the first rebuild finished the filter knows nothing and must let every token through
+    private volatile boolean ready;
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        current = newBits();
+    }
+
+    public void add(String token) {
+        if (token == null) {
+            return;
+        }
+
+        Bits bits = current;
+        bits.add(token);
+        Bits next = rebuilding;
+        if (next != null) {
+            next.add(token);
+        }
+
+        // a rebuild may have swapped its filter in after current was read
+        Bits swapped = current;
+        if (swapped != bits) {
+            swapped.add(token);
+        }
+    }
+
+    public boolean mightContain(String token) {
+        if (!ready || current.mightContain(token)) {
+            return true;
+        }
+
+        Bits old = previous;
+        if (old != null && System.currentTimeMillis() < previousUntil && old.mightContain(token)) {
+            return true;
+        }
+
+        rejections.incrementAndGet();
+        return false;
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(
+            initialDelayString = "${auth.token-filter.rebuild-interval-millis:3600000}",
+            fixedDelayString = "${auth.token-filter.rebuild-interval-millis:3600000}"
+    )
+    @Transactional(readOnly = true)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Bits next = newBits();
+        rebuilding = next;
+
+        long count = 0;
+        try {
+            // one at a time, mysql allows a single streaming result set per connection
+            count += addAll(next, sessionRepository.streamLiveTokens(start));
+            count += addAll(next, userRepository.streamLiveTokens(start));
+
+            // publish before rebuilding is cleared, so an add in between still reaches the new filter
+            previous = current;
+            previousUntil = System.currentTimeMillis() + REBUILD_GRACE_MILLIS;
+            current = next;
+            ready = true;
+        } finally {
+            rebuilding = null;
+        }
+
+        log.info("token filter rebuilt with {} tokens in {} ms", count, System.currentTimeMillis() - start);
+    }
+
+    private long addAll(Bits bits, Stream<String> tokens) {
+        long count = 0;
+        try (tokens) {
+            Iterator<String> iterator = tokens.iterator();
+            while (iterator.hasNext()) {
+                bits.add(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Bits newBits() {
+        long bits = (long) Math.ceil(-expectedTokens * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int hashes = Math.max(1, (int) Math.round((double) bits / expectedTokens * Math.log(2)));
+        return new Bits(bits, hashes);
+    }
+
+    private static final class Bits {
+
+        private final AtomicLongArray words;
+
+        private final long size;
+
+        private final int hashes;
+
+        private Bits(long size, int hashes) {
+            this.words = new AtomicLongArray((int) ((size + 63) >>> 6));
+            this.size = (long) words.length() << 6;
+            this.hashes = hashes;
+        }
+
+        void add(String token) {
+            long hash = hash(token);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % size;
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long value;
+                do {
+                    value = words.get(word);
+                } while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask));
+            }
+        }
+
+        boolean mightContain(String token) {
+            long hash = hash(token);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % size;
+                if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 64 bit FNV-1a followed by a murmur3 finalizer, split into two 32 bit hashes
+        private static long hash(String token) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : token.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
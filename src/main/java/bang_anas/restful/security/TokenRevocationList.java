@@ -0,0 +1,38 @@
+package bang_anas.restful.security;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// signed tokens cannot be deleted from the database on logout, so revoked ones are kept here
+// until they would have expired anyway. the list only ever holds tokens that are still alive
+@Component
+public class TokenRevocationList {
+
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    // purge expired entries whenever the map doubles, so logout stays O(1) amortized
+    private volatile int nextPurgeAt = 1024;
+
+    public void revoke(String token, long expiredAt) {
+        long now = System.currentTimeMillis();
+        if (expiredAt < now) {
+            return;
+        }
+
+        revoked.put(token, expiredAt);
+        if (revoked.size() > nextPurgeAt) {
+            revoked.values().removeIf(expiry -> expiry < now);
+            nextPurgeAt = Math.max(1024, revoked.size() * 2);
+        }
+    }
+
+    public boolean isRevoked(String token) {
+        return revoked.containsKey(token);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+}
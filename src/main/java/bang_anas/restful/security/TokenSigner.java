@@ -0,0 +1,105 @@
+package bang_anas.restful.security;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// issues and verifies self contained tokens: base64url(username).expiredAt.base64url(hmac-sha256)
+// so a request can be authenticated without a database round trip.
+// only used when auth.token.mode=signed, the default "opaque" mode keeps the random uuid tokens
+@Component
+@Slf4j
+public class TokenSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    @Value("${auth.token.mode:opaque}")
+    private String mode;
+
+    // base64 encoded key, must be the same on every node that validates tokens
+    @Value("${auth.token.secret:}")
+    private String secret;
+
+    private SecretKeySpec key;
+
+    // Mac is not thread safe and expensive to look up, so keep one per thread
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    @PostConstruct
+    void init() {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            if (isEnabled()) {
+                log.warn("auth.token.secret is not set, signed tokens will not survive a restart");
+            }
+        } else {
+            keyBytes = Base64.getDecoder().decode(secret);
+        }
+        key = new SecretKeySpec(keyBytes, ALGORITHM);
+    }
+
+    public boolean isEnabled() {
+        return "signed".equalsIgnoreCase(mode);
+    }
+
+    public String sign(String username, long expiredAt) {
+        String payload = ENCODER.encodeToString(username.getBytes(StandardCharsets.UTF_8)) + "." + expiredAt;
+        return payload + "." + ENCODER.encodeToString(mac(payload));
+    }
+
+    // return the claims of a well formed token with a valid signature, or null.
+    // expiry is not checked here, callers compare expiredAt with the current time
+    public SignedToken verify(String token) {
+        int signatureAt = token.lastIndexOf('.');
+        int expiredAt = token.lastIndexOf('.', signatureAt - 1);
+        if (expiredAt <= 0) {
+            return null;
+        }
+
+        try {
+            String payload = token.substring(0, signatureAt);
+            byte[] signature = DECODER.decode(token.substring(signatureAt + 1));
+            if (!MessageDigest.isEqual(signature, mac(payload))) {
+                return null;
+            }
+
+            String username = new String(DECODER.decode(token.substring(0, expiredAt)), StandardCharsets.UTF_8);
+            return new SignedToken(username, Long.parseLong(token.substring(expiredAt + 1, signatureAt)));
+        } catch (IllegalArgumentException exception) {
+            // bad base64 or a bad number, either way not a token we issued
+            return null;
+        }
+    }
+
+    private byte[] mac(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    public record SignedToken(String username, long expiredAt) {
+    }
+}
@@ -0,0 +1,166 @@
+package bang_anas.restful.service;
+
+import bang_anas.restful.entity.Address;
+import bang_anas.restful.entity.Contact;
+import bang_anas.restful.entity.User;
+import bang_anas.restful.model.AddressCountResponse;
+import bang_anas.restful.model.ContactAddressResponse;
+import bang_anas.restful.model.SearchAddressRequest;
+import bang_anas.restful.repository.projection.AddressCountView;
+import bang_anas.restful.repository.projection.AddressSearchView;
+import bang_anas.restful.search.AddressCursor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// addresses across all contacts of a user, filtered by exact city, province, country or postal code and
+// paged by address id (keyset). addresses carry the owning username, so (username, city, id) and the
+// like give every page as one index range in id order. contacts are joined by primary key for the names
+// of the rows on the page only
+@Service
+public class AddressSearchService {
+
+    public static final String BY_CITY = "city";
+
+    public static final String BY_COUNTRY = "country";
+
+    @Autowired
+    private ValidationService validationService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${address.search.max-size:100}")
+    private int maxSize;
+
+    @Transactional(readOnly = true)
+    public Slice<ContactAddressResponse> search(User user, SearchAddressRequest request) {
+        validationService.validate(request);
+        if (request.getCity() == null && request.getProvince() == null
+                && request.getCountry() == null && request.getPostalCode() == null) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "city, province, country or postalCode is required"
+            );
+        }
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AddressSearchView> query = builder.createQuery(AddressSearchView.class);
+        Root<Address> root = query.from(Address.class);
+        Join<Address, Contact> contact = root.join("contact");
+        query.select(builder.construct(
+                AddressSearchView.class,
+                contact.get("id"),
+                contact.get("firstName"),
+                contact.get("lastName"),
+                root.get("id"),
+                root.get("street"),
+                root.get("city"),
+                root.get("province"),
+                root.get("country"),
+                root.get("postalCode")
+        ));
+
+        List<Predicate> predicates = filters(user, request, root, builder);
+        if (request.getCursor() != null && !request.getCursor().isEmpty()) {
+            predicates.add(builder.greaterThan(root.get("id"), AddressCursor.decode(request.getCursor()).id()));
+        }
+        query.where(predicates.toArray(new Predicate[]{}));
+        query.orderBy(builder.asc(root.get("id")));
+
+        // one row more than asked tells whether there is a next page
+        int size = Math.min(request.getSize(), maxSize);
+        List<ContactAddressResponse> addresses = entityManager.createQuery(query)
+                .setMaxResults(size + 1)
+                .getResultList()
+                .stream()
+                .map(this::toContactAddressResponse)
+                .toList();
+
+        boolean hasNext = addresses.size() > size;
+        return new SliceImpl<>(hasNext ? addresses.subList(0, size) : addresses, PageRequest.of(0, size), hasNext);
+    }
+
+    // addresses per city or per country, the biggest first. the filters narrow what is counted,
+    // so cities can be counted inside one country
+    @Transactional(readOnly = true)
+    public List<AddressCountResponse> count(User user, String by, SearchAddressRequest request, int limit) {
+        if (!BY_CITY.equals(by) && !BY_COUNTRY.equals(by)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unknown by " + by);
+        }
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AddressCountView> query = builder.createQuery(AddressCountView.class);
+        Root<Address> root = query.from(Address.class);
+        Expression<String> value = root.get(by);
+        Expression<Long> count = builder.count(root);
+        query.select(builder.construct(AddressCountView.class, value, count));
+
+        // grouped on (username, city, id) or (username, country, id) alone, contacts are not read
+        List<Predicate> predicates = filters(user, request, root, builder);
+        predicates.add(builder.isNotNull(value));
+        query.where(predicates.toArray(new Predicate[]{}));
+        query.groupBy(value);
+        query.orderBy(builder.desc(count), builder.asc(value));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(Math.clamp(limit, 1, 1000))
+                .getResultList()
+                .stream()
+                .map(view -> new AddressCountResponse(view.value(), view.count()))
+                .toList();
+    }
+
+    // the owner is compared on addresses.username, the leading column of every search index
+    private List<Predicate> filters(User user, SearchAddressRequest request, Root<Address> root,
+                                    CriteriaBuilder builder) {
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(builder.equal(root.get("username"), user.getUsername()));
+
+        if (Objects.nonNull(request.getCity())) {
+            predicates.add(builder.equal(root.get("city"), request.getCity()));
+        }
+        if (Objects.nonNull(request.getProvince())) {
+            predicates.add(builder.equal(root.get("province"), request.getProvince()));
+        }
+        if (Objects.nonNull(request.getCountry())) {
+            predicates.add(builder.equal(root.get("country"), request.getCountry()));
+        }
+        if (Objects.nonNull(request.getPostalCode())) {
+            predicates.add(builder.equal(root.get("postalCode"), request.getPostalCode()));
+        }
+        return predicates;
+    }
+
+    private ContactAddressResponse toContactAddressResponse(AddressSearchView view) {
+        return ContactAddressResponse.builder()
+                .contactId(view.contactId())
+                .firstName(view.firstName())
+                .lastName(view.lastName())
+                .id(view.id())
+                .street(view.street())
+                .city(view.city())
+                .province(view.province())
+                .country(view.country())
+                .postalCode(view.postalCode())
+                .build();
+    }
+}
@@ -1,27 +1,68 @@
 package bang_anas.restful.service;
 
 import bang_anas.restful.entity.Address;
-import bang_anas.restful.entity.Contact;
 import bang_anas.restful.entity.User;
 import bang_anas.restful.model.AddressResponse;
+import bang_anas.restful.model.BulkAddressItem;
+import bang_anas.restful.model.BulkAddressRequest;
+import bang_anas.restful.model.BulkAddressResponse;
+import bang_anas.restful.model.BulkAddressResult;
 import bang_anas.restful.model.CreateAddressRequest;
 import bang_anas.restful.model.UpdateAddressRequest;
 import bang_anas.restful.repository.AddressRepository;
 import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.projection.AddressView;
 import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.search.AddressCursor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
 public class AddressService {
 
+    private static final String INSERT = "INSERT INTO addresses"
+            + " (id, contact_id, username, street, city, province, country, postal_code) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE = "UPDATE addresses"
+            + " SET street = ?, city = ?, province = ?, country = ?, postal_code = ? WHERE id = ? AND contact_id = ?";
+
+    private static final String DELETE = "DELETE FROM addresses WHERE id = ? AND contact_id = ?";
+
+    // the join repeats the ownership check, in case the contact changed hands after checkContact
+    private static final String STREAM = "SELECT a.id, a.street, a.city, a.province, a.country, a.postal_code"
+            + " FROM addresses a JOIN contacts c ON c.id = a.contact_id"
+            + " WHERE a.contact_id = ? AND c.username = ? ORDER BY a.id";
+
+    private static final String[] STREAM_FIELDS = {"id", "street", "city", "province", "country", "postalCode"};
+
     @Autowired
     private ContactRepository contactRepository;
 
@@ -31,23 +72,40 @@ public class AddressService {
     @Autowired
     private ValidationService validationService;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${address.bulk.max-items:500}")
+    private int bulkMaxItems;
+
+    @Value("${address.list.max-size:100}")
+    private int listMaxSize;
+
+    // same driver setting as the contact export, Integer.MIN_VALUE streams row by row
+    @Value("${contact.export.fetch-size:-2147483648}")
+    private int fetchSize;
+
 
     @Transactional
     public AddressResponse create(User user, CreateAddressRequest request) {
 
         validationService.validate(request);
 
-        Contact contact = contactRepository.findFirstByUserAndId(
-                user,
-                request.getContactId()
-        ).orElseThrow(() -> new ResponseStatusException(
-                HttpStatus.BAD_REQUEST,
-                "contact is not found"
-        ));
+        // an ownership check and a reference, the contact and its user are not loaded
+        if (!contactRepository.existsByUserUsernameAndId(user.getUsername(), request.getContactId())) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "contact is not found"
+            );
+        }
 
         Address address = new Address();
         address.setId(UUID.randomUUID().toString());
-        address.setContact(contact);
+        address.setContact(contactRepository.getReferenceById(request.getContactId()));
+        address.setUsername(user.getUsername());
         address.setStreet(request.getStreet());
         address.setCity(request.getCity());
         address.setProvince(request.getProvince());
@@ -70,97 +128,308 @@ public class AddressService {
                 .build();
     }
 
+    private AddressResponse toAddressResponse(AddressView address) {
+        return AddressResponse.builder()
+                .id(address.id())
+                .street(address.street())
+                .city(address.city())
+                .province(address.province())
+                .country(address.country())
+                .postalCode(address.postalCode())
+                .build();
+    }
+
     @Transactional(readOnly = true)
     public AddressResponse get(User user, String contactId, String addressID) {
 
-        Contact contact = contactRepository.findFirstByUserAndId(
-                user,
-                contactId
-        ).orElseThrow(() -> new ResponseStatusException(
-                HttpStatus.NOT_FOUND,
-                "contact is not found"
-        ));
-
-        Address address =
-                addressRepository.findFirstByContactAndId(
-                        contact,
+        AddressView address =
+                addressRepository.findOwnedView(
+                        user.getUsername(),
+                        contactId,
                         addressID
-                ).orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "address is not found"
-                ));
+                ).orElseThrow(() -> notFound(user, contactId));
 
         return toAddressResponse(address);
     }
 
+    // one UPDATE joined with the owning contact, no entity is loaded
     @Transactional
     public AddressResponse update(User user, UpdateAddressRequest request) {
 
         validationService.validate(request);
 
-        Contact contact =
-                contactRepository.findFirstByUserAndId(
-                        user,
-                        request.getContactId()
-                ).orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "contact is not found"
-                ));
+        int updated = addressRepository.updateOwned(
+                user.getUsername(),
+                request.getContactId(),
+                request.getAddressId(),
+                request.getStreet(),
+                request.getCity(),
+                request.getProvince(),
+                request.getCountry(),
+                request.getPostalCode()
+        );
+        if (updated == 0) {
+            throw notFound(user, request.getContactId());
+        }
 
-        Address address =
-                addressRepository.findFirstByContactAndId(
-                        contact,
-                        request.getAddressId()
-                ).orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "address is not found"
-                ));
-
-        address.setStreet(request.getStreet());
-        address.setCity(request.getCity());
-        address.setProvince(request.getProvince());
-        address.setCountry(request.getCountry());
-        address.setPostalCode(request.getPostalCode());
-        addressRepository.save(address);
-
-        return toAddressResponse(address);
+        return AddressResponse.builder()
+                .id(request.getAddressId())
+                .street(request.getStreet())
+                .city(request.getCity())
+                .province(request.getProvince())
+                .country(request.getCountry())
+                .postalCode(request.getPostalCode())
+                .build();
     }
 
     @Transactional
     public void remove(User user, String contactId, String addressId) {
-        Contact contact = contactRepository.findFirstByUserAndId(
-                user,
-                contactId
-        ).orElseThrow(() -> new ResponseStatusException(
+        if (addressRepository.deleteOwned(user.getUsername(), contactId, addressId) == 0) {
+            throw notFound(user, contactId);
+        }
+    }
+
+    // only on the failure path: one more query to tell a missing contact from a missing address
+    private ResponseStatusException notFound(User user, String contactId) {
+        return new ResponseStatusException(
                 HttpStatus.NOT_FOUND,
-                "contact is not found"
-        ));
-
-        Address address =
-                addressRepository.findFirstByContactAndId(
-                        contact,
-                        addressId
-                ).orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "address is not found"
-                ));
+                contactRepository.existsByUserUsernameAndId(user.getUsername(), contactId)
+                        ? "address is not found"
+                        : "contact is not found"
+        );
+    }
+
+    // one keyset page in id order, never more than address.list.max-size addresses
+    @Transactional(readOnly = true)
+    public Slice<AddressResponse> list(User user, String contactId, String cursor, Integer size) {
+        checkContact(user, contactId);
+
+        int limit = size == null ? listMaxSize : Math.clamp(size, 1, listMaxSize);
+        String afterId = cursor == null || cursor.isEmpty() ? "" : AddressCursor.decode(cursor).id();
+
+        // one row more than asked tells whether there is a next page
+        List<AddressResponse> addresses = addressRepository.findViewsByContactIdAfter(
+                        contactId, afterId, PageRequest.of(0, limit + 1))
+                .stream()
+                .map(this::toAddressResponse)
+                .toList();
 
-        addressRepository.delete(address);
+        boolean hasNext = addresses.size() > limit;
+        return new SliceImpl<>(hasNext ? addresses.subList(0, limit) : addresses, PageRequest.of(0, limit), hasNext);
     }
 
+    // called before a stream starts as well, so a missing contact is still a json 404
     @Transactional(readOnly = true)
-    public List<AddressResponse> list(User user, String contactId) {
-        Contact contact = contactRepository.findFirstByUserAndId(
-                        user,
-                        contactId
-                )
-                .orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "Contact is not found"
-                ));
+    public void checkContact(User user, String contactId) {
+        if (!contactRepository.existsByUserUsernameAndId(user.getUsername(), contactId)) {
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND,
+                    "Contact is not found"
+            );
+        }
+    }
+
+    // every address of the contact as ndjson, one line each, written from a forward only jdbc cursor
+    public void stream(User user, String contactId, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+        generator.setRootValueSeparator(null);
+
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        STREAM,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY
+                );
+                statement.setFetchSize(fetchSize);
+                statement.setString(1, contactId);
+                statement.setString(2, user.getUsername());
+                return statement;
+            }, (RowCallbackHandler) resultSet -> {
+                try {
+                    generator.writeStartObject();
+                    for (int i = 0; i < STREAM_FIELDS.length; i++) {
+                        generator.writeStringField(STREAM_FIELDS[i], resultSet.getString(i + 1));
+                    }
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // most likely the client went away, nothing can be sent to it anymore
+            throw e.getCause();
+        }
+
+        generator.flush();
+        writer.flush();
+    }
+
+    // every item is checked up front, the valid ones are written in one transaction with one
+    // batch statement per action. an invalid item fails alone and does not roll back the others
+    @Transactional
+    public BulkAddressResponse bulk(User user, BulkAddressRequest request) {
+
+        List<BulkAddressItem> items = request.getItems() == null ? List.of() : request.getItems();
+        if (items.size() > bulkMaxItems) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "at most " + bulkMaxItems + " items are allowed"
+            );
+        }
+
+        // one ownership check for the whole request
+        if (!contactRepository.existsByUserUsernameAndId(user.getUsername(), request.getContactId())) {
+            throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND,
+                    "contact is not found"
+            );
+        }
+
+        List<BulkAddressResult> results = new ArrayList<>(items.size());
+        Set<String> ids = new HashSet<>();
+        for (int index = 0; index < items.size(); index++) {
+            BulkAddressItem item = items.get(index);
+            if (item == null) {
+                results.add(BulkAddressResult.builder()
+                        .index(index)
+                        .success(false)
+                        .message("item is empty")
+                        .build());
+                continue;
+            }
+
+            BulkAddressResult result = BulkAddressResult.builder()
+                    .index(index)
+                    .action(item.getAction())
+                    .id(BulkAddressItem.CREATE.equals(item.getAction()) ? null : item.getId())
+                    .success(true)
+                    .build();
+            results.add(result);
+
+            String message = checkBulkItem(request.getContactId(), item);
+            if (message == null && !BulkAddressItem.CREATE.equals(item.getAction()) && !ids.add(item.getId())) {
+                message = "address is used by more than one item";
+            }
+            if (message != null) {
+                fail(result, message);
+            }
+        }
 
-        List<Address> addresses = addressRepository.findAllByContact(contact);
+        // one query tells which of the addresses to update or delete belong to the contact
+        Set<String> existing = ids.isEmpty()
+                ? Set.of()
+                : new HashSet<>(addressRepository.findIdsByContactIdAndIdIn(request.getContactId(), ids));
+
+        Batch inserts = new Batch();
+        Batch updates = new Batch();
+        Batch deletes = new Batch();
+        for (int index = 0; index < items.size(); index++) {
+            BulkAddressItem item = items.get(index);
+            BulkAddressResult result = results.get(index);
+            if (result.getSuccess() && !BulkAddressItem.CREATE.equals(item.getAction())
+                    && !existing.contains(item.getId())) {
+                fail(result, "address is not found");
+            }
+            if (!result.getSuccess()) {
+                continue;
+            }
+
+            switch (item.getAction()) {
+                case BulkAddressItem.CREATE -> {
+                    result.setId(UUID.randomUUID().toString());
+                    inserts.add(result, result.getId(), request.getContactId(), user.getUsername(), item.getStreet(),
+                            item.getCity(), item.getProvince(), item.getCountry(), item.getPostalCode());
+                }
+                case BulkAddressItem.UPDATE -> updates.add(result, item.getStreet(), item.getCity(), item.getProvince(),
+                        item.getCountry(), item.getPostalCode(), item.getId(), request.getContactId());
+                default -> deletes.add(result, item.getId(), request.getContactId());
+            }
+        }
+
+        // an address removed by another request after the lookup above matches no row here
+        deletes.execute(DELETE);
+        updates.execute(UPDATE);
+        inserts.execute(INSERT);
+
+        int created = 0, updated = 0, deleted = 0, failed = 0;
+        for (BulkAddressResult result : results) {
+            if (!result.getSuccess()) {
+                failed++;
+            } else if (BulkAddressItem.CREATE.equals(result.getAction())) {
+                created++;
+            } else if (BulkAddressItem.UPDATE.equals(result.getAction())) {
+                updated++;
+            } else {
+                deleted++;
+            }
+        }
+
+        return BulkAddressResponse.builder()
+                .created(created)
+                .updated(updated)
+                .deleted(deleted)
+                .failed(failed)
+                .results(results)
+                .build();
+    }
+
+    // the rows of one batch statement with the result each row reports to
+    private class Batch {
+
+        private final List<Object[]> rows = new ArrayList<>();
+
+        private final List<BulkAddressResult> results = new ArrayList<>();
+
+        void add(BulkAddressResult result, Object... row) {
+            rows.add(row);
+            results.add(result);
+        }
+
+        // 0 = no row matched. rewritten batches may answer SUCCESS_NO_INFO, which counts as applied
+        void execute(String sql) {
+            if (rows.isEmpty()) {
+                return;
+            }
+            int[] counts = jdbcTemplate.batchUpdate(sql, rows);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    fail(results.get(i), "address is not found");
+                }
+            }
+        }
+    }
+
+    // null when the item can be applied, the reason otherwise
+    private String checkBulkItem(String contactId, BulkAddressItem item) {
+        try {
+            if (BulkAddressItem.CREATE.equals(item.getAction())) {
+                validationService.validate(new CreateAddressRequest(
+                        contactId, item.getStreet(), item.getCity(), item.getProvince(),
+                        item.getCountry(), item.getPostalCode()
+                ));
+            } else if (BulkAddressItem.UPDATE.equals(item.getAction())) {
+                validationService.validate(new UpdateAddressRequest(
+                        contactId, item.getId(), item.getStreet(), item.getCity(), item.getProvince(),
+                        item.getCountry(), item.getPostalCode()
+                ));
+            } else if (BulkAddressItem.DELETE.equals(item.getAction())) {
+                if (item.getId() == null || item.getId().isBlank()) {
+                    return "id must not be blank";
+                }
+            } else {
+                return "unknown action";
+            }
+        } catch (ConstraintViolationException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
 
-        return addresses.stream().map(this::toAddressResponse).toList();
+    private void fail(BulkAddressResult result, String message) {
+        result.setSuccess(false);
+        result.setMessage(message);
     }
 }
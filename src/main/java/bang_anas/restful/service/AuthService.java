@@ -1,14 +1,20 @@
 package bang_anas.restful.service;
 
+import bang_anas.restful.cache.TokenCache;
+import bang_anas.restful.entity.Session;
 import bang_anas.restful.entity.User;
 import bang_anas.restful.model.LoginUserRequest;
 import bang_anas.restful.model.TokenResponse;
+import bang_anas.restful.repository.SessionRepository;
 import bang_anas.restful.repository.UserRepository;
-import bang_anas.restful.security.BCrypt;
+import bang_anas.restful.security.LoginRateLimiter;
+import bang_anas.restful.security.TokenRevocationList;
+import bang_anas.restful.security.TokenSigner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.UUID;
@@ -19,14 +25,43 @@ public class AuthService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private SessionRepository sessionRepository;
+
     @Autowired
     private ValidationService validationService;
 
-    @Transactional
-    public TokenResponse login(LoginUserRequest request) {
+    @Autowired
+    private PasswordService passwordService;
+
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private TokenSigner tokenSigner;
+
+    @Autowired
+    private TokenRevocationList tokenRevocationList;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // not transactional: a throttled request is turned away before it borrows a pool connection,
+    // and no connection is held while bcrypt waits for or runs on the password pool
+    public TokenResponse login(LoginUserRequest request, String clientAddress) {
 
         // validate the data request
         validationService.validate(request);
+
+        // shed credential stuffing before it costs a connection, a query and a bcrypt hash
+        if (!loginRateLimiter.tryAcquire(request.getUsername(), clientAddress)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "too many login attempts, try again later");
+        }
+
+        // short read only transaction of the repository, the connection goes back to the pool here
         User user =
                 userRepository.findById(request.getUsername()).orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.UNAUTHORIZED,
@@ -34,19 +69,48 @@ public class AuthService {
                 ));
 
         // check password
-        if (BCrypt.checkpw(request.getPassword(), user.getPassword())) {
-            user.setToken(UUID.randomUUID().toString());
-            user.setTokenExpiredAt(next30Days());
+        if (!passwordService.check(request.getPassword(), user.getPassword())) {
+            throw  new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Username or password is wrong");
+        }
+
+        // the password is known only here, so this is where old hashes move to the current cost
+        String rehashed = passwordService.needsRehash(user.getPassword())
+                ? passwordService.hash(request.getPassword())
+                : null;
+
+        // only the writes run in a transaction, after all bcrypt work is done
+        return transactionTemplate.execute(status -> authenticated(user, rehashed, request));
+    }
+
+    private TokenResponse authenticated(User user, String rehashed, LoginUserRequest request) {
+        if (rehashed != null) {
+            user.setPassword(rehashed);
             userRepository.save(user);
+        }
 
-            // return the response
+        // signed tokens carry username and expiry themselves, nothing is written to the users row
+        if (tokenSigner.isEnabled()) {
+            Long expiredAt = next30Days();
             return TokenResponse.builder()
-                    .token(user.getToken())
-                    .expiredAt(user.getTokenExpiredAt())
+                    .token(tokenSigner.sign(user.getUsername(), expiredAt))
+                    .expiredAt(expiredAt)
                     .build();
-        } else {
-            throw  new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Username or password is wrong");
         }
+
+        // every login is its own session row, the users row is not written
+        Session session = new Session();
+        session.setToken(UUID.randomUUID().toString());
+        session.setUser(user);
+        session.setDevice(request.getDevice());
+        session.setExpiredAt(next30Days());
+        session.setCreatedAt(System.currentTimeMillis());
+        sessionRepository.save(session);
+
+        // return the response
+        return TokenResponse.builder()
+                .token(session.getToken())
+                .expiredAt(session.getExpiredAt())
+                .build();
     }
 
     // make expired date for 30 days
@@ -55,7 +119,22 @@ public class AuthService {
     }
 
     @Transactional
-    public  void logout(User user){
+    public  void logout(User user, String token){
+        if (tokenSigner.isEnabled()) {
+            TokenSigner.SignedToken signedToken = tokenSigner.verify(token);
+            tokenRevocationList.revoke(token, signedToken.expiredAt());
+            return;
+        }
+
+        // only the session of this token ends, the other devices stay logged in
+        tokenCache.evict(token);
+        Session session = sessionRepository.findById(token).orElse(null);
+        if (session != null) {
+            sessionRepository.delete(session);
+            return;
+        }
+
+        // token issued before the sessions table, stored on the users row
         user.setToken(null);
         user.setTokenExpiredAt(null);
 
@@ -0,0 +1,225 @@
+package bang_anas.restful.service;
+
+import bang_anas.restful.entity.User;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+// writes all contacts of a user, optionally with their addresses, straight from a forward only
+// jdbc cursor to the response. rows are never collected, so memory does not grow with the address book
+@Service
+public class ContactExportService {
+
+    public static final String NDJSON = "ndjson";
+
+    public static final String CSV = "csv";
+
+    private static final String CONTACTS = "SELECT c.id, c.first_name, c.last_name, c.email, c.phone"
+            + " FROM contacts c WHERE c.username = ?";
+
+    // ordered by contact so the addresses of one contact arrive next to each other
+    private static final String CONTACTS_WITH_ADDRESSES = "SELECT c.id, c.first_name, c.last_name, c.email, c.phone,"
+            + " a.id, a.street, a.city, a.province, a.country, a.postal_code"
+            + " FROM contacts c LEFT JOIN addresses a ON a.contact_id = c.id"
+            + " WHERE c.username = ? ORDER BY c.id";
+
+    private static final String[] CONTACT_COLUMNS = {"id", "firstName", "lastName", "email", "phone"};
+
+    private static final String[] ADDRESS_COLUMNS = {"addressId", "street", "city", "province", "country", "postalCode"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Integer.MIN_VALUE makes MySQL Connector/J stream row by row,
+    // a positive value only takes effect with useCursorFetch=true on the jdbc url
+    @Value("${contact.export.fetch-size:-2147483648}")
+    private int fetchSize;
+
+    public void validateFormat(String format) {
+        if (!NDJSON.equals(format) && !CSV.equals(format)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unknown format " + format);
+        }
+    }
+
+    public void export(User user, String format, boolean addresses, OutputStream outputStream) throws IOException {
+        validateFormat(format);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+        RowCallbackHandler handler;
+        if (NDJSON.equals(format)) {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+            // every object ends its own line, no extra separator between root values
+            generator.setRootValueSeparator(null);
+            handler = new NdjsonHandler(generator, addresses);
+        } else {
+            handler = new CsvHandler(writer, addresses);
+        }
+
+        if (handler instanceof CsvHandler csv) {
+            csv.header();
+        }
+
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(
+                        addresses ? CONTACTS_WITH_ADDRESSES : CONTACTS,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY
+                );
+                statement.setFetchSize(fetchSize);
+                statement.setString(1, user.getUsername());
+                return statement;
+            }, handler);
+        } catch (UncheckedIOException e) {
+            // most likely the client went away, nothing can be sent to it anymore
+            throw e.getCause();
+        }
+
+        if (handler instanceof NdjsonHandler ndjson) {
+            ndjson.finish();
+        }
+        writer.flush();
+    }
+
+    // one json object per contact and line, addresses as an array inside it
+    private static class NdjsonHandler implements RowCallbackHandler {
+
+        private final JsonGenerator generator;
+
+        private final boolean addresses;
+
+        private String currentId;
+
+        NdjsonHandler(JsonGenerator generator, boolean addresses) {
+            this.generator = generator;
+            this.addresses = addresses;
+        }
+
+        @Override
+        public void processRow(ResultSet resultSet) throws SQLException {
+            try {
+                String id = resultSet.getString(1);
+                if (!id.equals(currentId)) {
+                    endContact();
+                    currentId = id;
+
+                    generator.writeStartObject();
+                    for (int i = 0; i < CONTACT_COLUMNS.length; i++) {
+                        generator.writeStringField(CONTACT_COLUMNS[i], resultSet.getString(i + 1));
+                    }
+                    if (addresses) {
+                        generator.writeArrayFieldStart("addresses");
+                    }
+                }
+
+                String addressId = addresses ? resultSet.getString(6) : null;
+                if (addressId != null) {
+                    generator.writeStartObject();
+                    generator.writeStringField("id", addressId);
+                    for (int i = 1; i < ADDRESS_COLUMNS.length; i++) {
+                        generator.writeStringField(ADDRESS_COLUMNS[i], resultSet.getString(i + 6));
+                    }
+                    generator.writeEndObject();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void finish() throws IOException {
+            endContact();
+            generator.flush();
+        }
+
+        private void endContact() throws IOException {
+            if (currentId == null) {
+                return;
+            }
+            if (addresses) {
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+    }
+
+    // one line per contact, or per address with the contact columns repeated. rfc 4180 quoting
+    private static class CsvHandler implements RowCallbackHandler {
+
+        private final Writer writer;
+
+        private final boolean addresses;
+
+        CsvHandler(Writer writer, boolean addresses) {
+            this.writer = writer;
+            this.addresses = addresses;
+        }
+
+        void header() throws IOException {
+            writer.write(String.join(",", CONTACT_COLUMNS));
+            if (addresses) {
+                writer.write(',');
+                writer.write(String.join(",", ADDRESS_COLUMNS));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void processRow(ResultSet resultSet) throws SQLException {
+            int columns = CONTACT_COLUMNS.length + (addresses ? ADDRESS_COLUMNS.length : 0);
+            try {
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) {
+                        writer.write(',');
+                    }
+                    writeField(resultSet.getString(i));
+                }
+                writer.write("\r\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeField(String value) throws IOException {
+            if (Objects.isNull(value)) {
+                return;
+            }
+
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+}
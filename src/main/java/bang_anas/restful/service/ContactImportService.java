@@ -0,0 +1,201 @@
+package bang_anas.restful.service;
+
+import bang_anas.restful.cache.ContactCountCache;
+import bang_anas.restful.cache.ContactSearchCache;
+import bang_anas.restful.entity.Contact;
+import bang_anas.restful.entity.User;
+import bang_anas.restful.model.CreateContactRequest;
+import bang_anas.restful.model.ImportContactError;
+import bang_anas.restful.model.ImportContactResponse;
+import bang_anas.restful.search.ContactAutocomplete;
+import bang_anas.restful.search.ContactSearchIndex;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DatabindException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// bulk contact import: the body (a json array or ndjson) is read one record at a time, records are
+// validated and inserted in chunks with jdbc batch statements, one transaction per chunk.
+// a bad record is reported with its position and skipped, the rest of the import goes on
+@Service
+@Slf4j
+public class ContactImportService {
+
+    private static final String INSERT = "INSERT INTO contacts"
+            + " (id, username, first_name, last_name, email, email_domain, phone, phone_digits, phone_reversed)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ValidationService validationService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ContactSearchIndex contactSearchIndex;
+
+    @Autowired
+    private ContactCountCache contactCountCache;
+
+    @Autowired
+    private ContactSearchCache contactSearchCache;
+
+    @Autowired
+    private ContactAutocomplete contactAutocomplete;
+
+    @Value("${contact.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${contact.import.max-errors:1000}")
+    private int maxErrors;
+
+    public ImportContactResponse importContacts(User user, InputStream body) throws IOException {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+        List<Record> chunk = new ArrayList<>(chunkSize);
+
+        // readValues walks the elements of a top level array as well as whitespace separated objects
+        try (MappingIterator<CreateContactRequest> requests =
+                     objectMapper.readerFor(CreateContactRequest.class).readValues(body)) {
+            long index = 0;
+            while (true) {
+                CreateContactRequest request;
+                try {
+                    if (!requests.hasNextValue()) {
+                        break;
+                    }
+                    request = requests.nextValue();
+                } catch (DatabindException e) {
+                    // well formed json that does not fit a contact, like "firstName": {}. the iterator
+                    // skips to the end of that record, so only this one fails
+                    result.error(index, "invalid contact: " + e.getOriginalMessage(), maxErrors);
+                    index++;
+                    continue;
+                } catch (JsonProcessingException e) {
+                    // the stream can not be trusted after a syntax error, keep what was read so far
+                    result.error(index, "invalid json: " + e.getOriginalMessage(), maxErrors);
+                    break;
+                }
+
+                try {
+                    validationService.validate(request);
+                    chunk.add(new Record(index, request));
+                } catch (ConstraintViolationException e) {
+                    result.error(index, e.getMessage(), maxErrors);
+                }
+                index++;
+
+                if (chunk.size() == chunkSize) {
+                    flush(user, chunk, result);
+                    chunk.clear();
+                }
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            flush(user, chunk, result);
+        }
+
+        long millis = System.currentTimeMillis() - start;
+        log.info("imported {} contacts for {} in {} ms, {} failed", result.imported, user.getUsername(), millis, result.failed);
+
+        return ImportContactResponse.builder()
+                .imported(result.imported)
+                .failed(result.failed)
+                .errors(result.errors)
+                .build();
+    }
+
+    private void flush(User user, List<Record> chunk, Result result) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(user, chunk));
+            result.imported += chunk.size();
+        } catch (DataAccessException e) {
+            // one row broke the batch, find it by inserting the chunk row by row
+            for (Record record : chunk) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> insert(user, List.of(record)));
+                    result.imported++;
+                } catch (DataAccessException rowException) {
+                    result.error(record.index, rowException.getMostSpecificCause().getMessage(), maxErrors);
+                }
+            }
+        }
+
+        // plain jdbc does not trigger ContactListener, so drop the cached search results here
+        contactCountCache.evictUser(user.getUsername());
+        contactSearchCache.invalidate(user.getUsername());
+        contactAutocomplete.evictUser(user.getUsername());
+    }
+
+    private void insert(User user, List<Record> records) {
+        List<Contact> contacts = new ArrayList<>(records.size());
+        List<Object[]> rows = new ArrayList<>(records.size());
+        for (Record record : records) {
+            CreateContactRequest request = record.request;
+
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName(request.getFirstName());
+            contact.setLastName(request.getLastName());
+            contact.setEmail(request.getEmail());
+            contact.setPhone(request.getPhone());
+            contacts.add(contact);
+
+            rows.add(new Object[]{
+                    contact.getId(),
+                    user.getUsername(),
+                    contact.getFirstName(),
+                    contact.getLastName(),
+                    contact.getEmail(),
+                    contact.getEmailDomain(),
+                    contact.getPhone(),
+                    contact.getPhoneDigits(),
+                    contact.getPhoneReversed()
+            });
+        }
+
+        jdbcTemplate.batchUpdate(INSERT, rows);
+        contactSearchIndex.indexNew(contacts);
+    }
+
+    private record Record(long index, CreateContactRequest request) {
+    }
+
+    private static class Result {
+
+        private long imported;
+
+        private long failed;
+
+        private final List<ImportContactError> errors = new ArrayList<>();
+
+        void error(long index, String message, int maxErrors) {
+            failed++;
+            if (errors.size() < maxErrors) {
+                errors.add(new ImportContactError(index, message));
+            }
+        }
+    }
+}
@@ -1,26 +1,50 @@
 package bang_anas.restful.service;
 
+import bang_anas.restful.cache.ContactCountCache;
+import bang_anas.restful.cache.ContactSearchCache;
 import bang_anas.restful.entity.Contact;
 import bang_anas.restful.entity.User;
+import bang_anas.restful.model.AddressResponse;
 import bang_anas.restful.model.ContactResponse;
 import bang_anas.restful.model.CreateContactRequest;
+import bang_anas.restful.model.DomainCountResponse;
 import bang_anas.restful.model.SearchContactRequest;
 import bang_anas.restful.model.UpdateContactRequest;
+import bang_anas.restful.repository.AddressRepository;
 import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.projection.ContactAddressView;
+import bang_anas.restful.repository.projection.ContactView;
+import bang_anas.restful.search.ContactAutocomplete;
+import bang_anas.restful.search.ContactCursor;
+import bang_anas.restful.search.ContactSearchIndex;
+import bang_anas.restful.search.EmailDomains;
+import bang_anas.restful.search.PhoneNumbers;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -31,9 +55,33 @@ public class ContactService {
     @Autowired
     private ContactRepository contactRepository;
 
+    @Autowired
+    private AddressRepository addressRepository;
+
     @Autowired
     private ValidationService validationService;
 
+    @Autowired
+    private ContactSearchIndex contactSearchIndex;
+
+    @Autowired
+    private ContactCountCache contactCountCache;
+
+    @Autowired
+    private ContactSearchCache contactSearchCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ContactAutocomplete contactAutocomplete;
+
+    @Value("${contact.autocomplete.max-limit:50}")
+    private int autocompleteMaxLimit;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
 
     @Transactional
     public ContactResponse create(User user, CreateContactRequest request) {
@@ -62,11 +110,21 @@ public class ContactService {
                 .build();
     }
 
+    private ContactResponse toContactResponse(ContactView contact) {
+        return ContactResponse.builder()
+                .id(contact.id())
+                .firstName(contact.firstName())
+                .lastName(contact.lastName())
+                .email(contact.email())
+                .phone(contact.phone())
+                .build();
+    }
+
     @Transactional(readOnly = true)
     public ContactResponse get(User user, String id) {
-        Contact contact =
-                contactRepository.findFirstByUserAndId(
-                        user,
+        ContactView contact =
+                contactRepository.findViewByUsernameAndId(
+                        user.getUsername(),
                         id
                 ).orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
@@ -109,13 +167,188 @@ public class ContactService {
         contactRepository.delete(contact);
     }
 
-    @Transactional
+    // no @Transactional here, a cache hit should not even borrow a connection
     public Page<ContactResponse>  search (User user, SearchContactRequest request){
-        Specification<Contact> specification = (root, query, builder) -> {
+        Page<ContactResponse> cached = contactSearchCache.get(user.getUsername(), request);
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = contactSearchCache.version(user.getUsername());
+        Page<ContactResponse> page = transactionTemplate.execute(status -> searchPage(user, request));
+        contactSearchCache.put(user.getUsername(), request, version, page);
+        return page;
+    }
+
+    private Page<ContactResponse> searchPage(User user, SearchContactRequest request) {
+        Specification<Contact> specification = searchSpecification(user, request);
+
+        Pageable pageable = PageRequest.of(request.getPage(), request.getSize());
+        List<ContactResponse> contactResponses = findPage(specification, pageable.getOffset(), request.getSize(), false);
+
+        // like findAll(specification, pageable), the COUNT is skipped when the page itself shows the total
+        return PageableExecutionUtils.getPage(
+                contactResponses,
+                pageable,
+                () -> contactRepository.count(specification)
+        );
+    }
+
+    // the addresses of all given contacts with one IN query, never a query per contact.
+    // returns new responses, the given ones may be shared through ContactSearchCache
+    @Transactional(readOnly = true)
+    public List<ContactResponse> withAddresses(List<ContactResponse> contacts) {
+        if (contacts.isEmpty()) {
+            return contacts;
+        }
+
+        List<String> contactIds = contacts.stream().map(ContactResponse::getId).toList();
+        Map<String, List<AddressResponse>> addresses = new HashMap<>();
+        for (ContactAddressView address : addressRepository.findViewsByContactIds(contactIds)) {
+            addresses.computeIfAbsent(address.contactId(), ignored -> new ArrayList<>())
+                    .add(AddressResponse.builder()
+                            .id(address.id())
+                            .street(address.street())
+                            .city(address.city())
+                            .province(address.province())
+                            .country(address.country())
+                            .postalCode(address.postalCode())
+                            .build());
+        }
+
+        return contacts.stream()
+                .map(contact -> ContactResponse.builder()
+                        .id(contact.getId())
+                        .firstName(contact.getFirstName())
+                        .lastName(contact.getLastName())
+                        .email(contact.getEmail())
+                        .phone(contact.getPhone())
+                        .addresses(addresses.getOrDefault(contact.getId(), List.of()))
+                        .build())
+                .toList();
+    }
+
+    // contacts per email domain, the biggest domains first
+    @Transactional(readOnly = true)
+    public List<DomainCountResponse> countByDomain(User user, int limit) {
+        return contactRepository.countByDomain(user.getUsername(), PageRequest.of(0, Math.clamp(limit, 1, 1000)))
+                .stream()
+                .map(view -> new DomainCountResponse(view.domain(), view.count()))
+                .toList();
+    }
+
+    @Transactional(readOnly = true)
+    public DomainCountResponse countByDomain(User user, String domain) {
+        String normalized = EmailDomains.normalize(domain);
+        if (normalized == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "domain is empty");
+        }
+        return new DomainCountResponse(
+                normalized,
+                contactRepository.countByUserUsernameAndEmailDomain(user.getUsername(), normalized)
+        );
+    }
+
+    // served from memory, see ContactAutocomplete
+    public List<ContactResponse> autocomplete(User user, String prefix, int limit) {
+        if (prefix.isBlank()) {
+            return List.of();
+        }
+        return contactAutocomplete.complete(user.getUsername(), prefix, Math.clamp(limit, 1, autocompleteMaxLimit));
+    }
+
+    // total=approximate: same page, the total comes from ContactCountCache while it is fresh
+    @Transactional(readOnly = true)
+    public Page<ContactResponse> searchApproximate(User user, SearchContactRequest request) {
+        Specification<Contact> specification = searchSpecification(user, request);
+
+        Long total = contactCountCache.get(user.getUsername(), request);
+        if (total == null) {
+            total = contactRepository.count(specification);
+            contactCountCache.put(user.getUsername(), request, total);
+        }
+
+        Pageable pageable = PageRequest.of(request.getPage(), request.getSize());
+        List<ContactResponse> contactResponses = findPage(specification, pageable.getOffset(), request.getSize(), false);
+
+        return new PageImpl<>(contactResponses, pageable, total);
+    }
+
+    // total=has-more / total=none: no COUNT query, has-more reads one extra row to fill hasNext
+    @Transactional(readOnly = true)
+    public Slice<ContactResponse> searchWithoutCount(User user, SearchContactRequest request, boolean hasMore) {
+        Specification<Contact> specification = searchSpecification(user, request);
+
+        int size = request.getSize();
+        Pageable pageable = PageRequest.of(request.getPage(), size);
+        List<ContactResponse> contactResponses = findPage(specification, pageable.getOffset(), hasMore ? size + 1 : size, false);
+
+        boolean hasNext = contactResponses.size() > size;
+        return new SliceImpl<>(hasNext ? contactResponses.subList(0, size) : contactResponses, pageable, hasNext);
+    }
+
+    // selects only the response columns into ContactView, nothing enters the persistence context.
+    // ordered pages follow the (first_name, id) order of the cursor mode
+    private List<ContactResponse> findPage(Specification<Contact> specification, long offset, int limit, boolean ordered) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ContactView> query = builder.createQuery(ContactView.class);
+        Root<Contact> root = query.from(Contact.class);
+        query.select(builder.construct(
+                ContactView.class,
+                root.get("id"),
+                root.get("firstName"),
+                root.get("lastName"),
+                root.get("email"),
+                root.get("phone")
+        ));
+        query.where(specification.toPredicate(root, query, builder));
+        if (ordered) {
+            query.orderBy(builder.asc(root.get("firstName")), builder.asc(root.get("id")));
+        }
+
+        return entityManager.createQuery(query)
+                .setFirstResult(Math.toIntExact(offset))
+                .setMaxResults(limit)
+                .getResultList()
+                .stream()
+                .map(this::toContactResponse)
+                .toList();
+    }
+
+    // cursor mode: seek past the last (first_name, id) of the previous page instead of OFFSET,
+    // one extra row tells if there is a next page so no COUNT query is needed
+    @Transactional(readOnly = true)
+    public Slice<ContactResponse> searchAfter(User user, SearchContactRequest request) {
+        validationService.validate(request);
+
+        Specification<Contact> specification = searchSpecification(user, request);
+        if (!request.getCursor().isEmpty()) {
+            ContactCursor cursor = ContactCursor.decode(request.getCursor());
+            specification = specification.and((root, query, builder) -> builder.or(
+                    builder.greaterThan(root.get("firstName"), cursor.firstName()),
+                    builder.and(
+                            builder.equal(root.get("firstName"), cursor.firstName()),
+                            builder.greaterThan(root.get("id"), cursor.id())
+                    )
+            ));
+        }
+
+        int size = request.getSize();
+        List<ContactResponse> contactResponses = findPage(specification, 0, size + 1, true);
+
+        boolean hasNext = contactResponses.size() > size;
+        return new SliceImpl<>(hasNext ? contactResponses.subList(0, size) : contactResponses, PageRequest.of(0, size), hasNext);
+    }
+
+    private Specification<Contact> searchSpecification(User user, SearchContactRequest request) {
+        return (root, query, builder) -> {
             List<Predicate> predicates = new ArrayList<>();
             predicates.add(builder.equal(root.get("user"), user));
 
+            // the trigram candidates narrow the rows, the LIKE stays as the exact check
             if (Objects.nonNull(request.getName())){
+             addIfPresent(predicates, contactSearchIndex.candidates(
+                     root, query, builder, user.getUsername(), ContactSearchIndex.NAME, request.getName()));
              predicates.add(builder.or(
                      builder.like(root.get("firstName"),"%" +request.getName() + "%"),
                      builder.like(root.get("lastName"),"%" +request.getName() + "%")
@@ -123,28 +356,47 @@ public class ContactService {
             }
 
             if (Objects.nonNull(request.getEmail())){
+                addIfPresent(predicates, contactSearchIndex.candidates(
+                        root, query, builder, user.getUsername(), ContactSearchIndex.EMAIL, request.getEmail()));
                 predicates.add(builder.like(root.get("email"), "%" +request.getEmail()+"%"));
             }
 
+            // digits only, so the way the number is written does not matter
             if (Objects.nonNull(request.getPhone())){
-                predicates.add(builder.like(root.get("phone"), "%" +request.getPhone()+"%"));
+                String digits = PhoneNumbers.searchDigits(request.getPhone());
+                if (digits != null) {
+                    addIfPresent(predicates, contactSearchIndex.candidates(
+                            root, query, builder, user.getUsername(), ContactSearchIndex.PHONE, digits));
+                    predicates.add(builder.like(root.get("phoneDigits"), "%" + digits + "%"));
+                } else {
+                    predicates.add(builder.like(root.get("phone"), "%" +request.getPhone()+"%"));
+                }
+            }
+
+            // exact match on (username, email_domain)
+            if (Objects.nonNull(request.getDomain())) {
+                String domain = EmailDomains.normalize(request.getDomain());
+                predicates.add(domain == null
+                        ? builder.disjunction()
+                        : builder.equal(root.get("emailDomain"), domain));
+            }
+
+            // ends with: a prefix of the reversed digits, a range scan on (username, phone_reversed).
+            // every digit counts here, zeros at the start of a suffix are not a trunk prefix
+            if (Objects.nonNull(request.getPhoneSuffix())) {
+                String digits = PhoneNumbers.digits(request.getPhoneSuffix());
+                predicates.add(digits == null
+                        ? builder.disjunction()
+                        : builder.like(root.get("phoneReversed"), new StringBuilder(digits).reverse() + "%"));
             }
 
             return query.where(predicates.toArray(new Predicate[]{})).getRestriction();
         };
+    }
 
-        Pageable pageable = PageRequest.of(request.getPage(), request.getSize());
-        Page<Contact> contacts = contactRepository.findAll(specification,pageable);
-        List<ContactResponse> contactResponses = contacts.getContent().stream()
-//                .map(contact ->toContactResponse(contact))
-                .map(this::toContactResponse)
-//                .collect(Collectors.toList());
-                .toList();
-
-        return new PageImpl<>(
-                contactResponses,
-                pageable,
-                contacts.getTotalElements()
-        );
+    private void addIfPresent(List<Predicate> predicates, Predicate predicate) {
+        if (predicate != null) {
+            predicates.add(predicate);
+        }
     }
 }
@@ -0,0 +1,84 @@
+package bang_anas.restful.service;
+
+import bang_anas.restful.repository.SessionRepository;
+import bang_anas.restful.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.function.IntUnaryOperator;
+
+// removes expired sessions and clears expired users.token values in small LIMIT batches, each batch
+// its own short transaction with a pause in between, so the sweep never holds locks for long
+// or writes one huge binlog event
+@Service
+@Slf4j
+public class ExpiredTokenSweeper {
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${auth.sweeper.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${auth.sweeper.pause-millis:100}")
+    private long pauseMillis;
+
+    // stop after this many batches per table, the next run continues
+    @Value("${auth.sweeper.max-batches:1000}")
+    private int maxBatches;
+
+    private volatile SweepResult lastResult;
+
+    @Scheduled(
+            initialDelayString = "${auth.sweeper.interval-millis:600000}",
+            fixedDelayString = "${auth.sweeper.interval-millis:600000}"
+    )
+    public SweepResult sweep() {
+        long start = System.currentTimeMillis();
+
+        int sessions = sweep("sessions", limit -> sessionRepository.deleteExpired(start, limit));
+        int users = sweep("users", limit -> userRepository.clearExpiredTokens(start, limit));
+
+        SweepResult result = new SweepResult(sessions, users, System.currentTimeMillis() - start);
+        lastResult = result;
+        log.info("expired token sweep: {} sessions deleted, {} user tokens cleared in {} ms",
+                result.sessions(), result.users(), result.millis());
+        return result;
+    }
+
+    public SweepResult getLastResult() {
+        return lastResult;
+    }
+
+    private int sweep(String table, IntUnaryOperator batch) {
+        int total = 0;
+        for (int i = 0; i < maxBatches; i++) {
+            long start = System.currentTimeMillis();
+            int rows = batch.applyAsInt(batchSize);
+            total += rows;
+            log.debug("expired token sweep on {}: batch {} cleaned {} rows in {} ms",
+                    table, i + 1, rows, System.currentTimeMillis() - start);
+
+            if (rows < batchSize) {
+                break;
+            }
+
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return total;
+    }
+
+    public record SweepResult(int sessions, int users, long millis) {
+    }
+}
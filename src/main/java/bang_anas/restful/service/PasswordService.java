@@ -0,0 +1,204 @@
+package bang_anas.restful.service;
+
+import bang_anas.restful.security.BCrypt;
+import bang_anas.restful.security.BCryptEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// BCrypt is pure cpu work (~100ms per call), it runs on its own small pool so a login burst
+// can not take every tomcat thread and starve the other endpoints.
+// when the pool and its queue are full the request is rejected right away with 503
+@Service
+@Slf4j
+public class PasswordService {
+
+    @Value("${auth.password.threads:0}")
+    private int threads;
+
+    @Value("${auth.password.queue-size:64}")
+    private int queueSize;
+
+    @Value("${auth.password.timeout-millis:5000}")
+    private long timeoutMillis;
+
+    // fixed bcrypt cost, 0 = calibrate at startup so one hash takes about target-hash-millis on this machine
+    @Value("${auth.password.log-rounds:0}")
+    private int configuredLogRounds;
+
+    @Value("${auth.password.target-hash-millis:250}")
+    private long targetHashMillis;
+
+    @Value("${auth.password.min-log-rounds:10}")
+    private int minLogRounds;
+
+    @Value("${auth.password.max-log-rounds:16}")
+    private int maxLogRounds;
+
+    private volatile int logRounds;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        log.info("password hashing pool started with {} threads and queue size {}", poolSize, queueSize);
+
+        logRounds = configuredLogRounds > 0 ? configuredLogRounds : calibrate();
+        log.info("bcrypt cost set to {}", logRounds);
+    }
+
+    // time the minimum cost and extrapolate, every extra round doubles the work
+    int calibrate() {
+        String password = "calibration-password";
+        for (int i = 0; i < 10; i++) {
+            BCryptEngine.hashpw(password, BCrypt.gensalt(4));
+        }
+
+        long best = Long.MAX_VALUE;
+        String salt = BCrypt.gensalt(minLogRounds);
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            BCryptEngine.hashpw(password, salt);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double millis = best / 1_000_000.0;
+        int rounds = minLogRounds;
+        while (rounds < maxLogRounds && millis * 2 <= targetHashMillis) {
+            millis *= 2;
+            rounds++;
+        }
+        log.info("bcrypt calibration: cost {} takes about {} ms, target {} ms", rounds, Math.round(millis), targetHashMillis);
+        return rounds;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    public String hash(String password) {
+        int rounds = logRounds;
+        return execute(() -> BCryptEngine.hashpw(password, BCrypt.gensalt(rounds)));
+    }
+
+    public boolean check(String password, String hashed) {
+        return execute(() -> BCryptEngine.checkpw(password, hashed));
+    }
+
+    // true when the stored hash was made with another cost than the current one ($2a$10$... -> 10)
+    public boolean needsRehash(String hashed) {
+        int off = hashed.charAt(2) == '$' ? 3 : 4;
+        try {
+            return Integer.parseInt(hashed, off, off + 2, 10) != logRounds;
+        } catch (RuntimeException exception) {
+            return false;
+        }
+    }
+
+    public int getLogRounds() {
+        return logRounds;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public double getAverageLatencyMillis() {
+        long count = completed.get();
+        return count == 0 ? 0 : totalNanos.get() / 1_000_000.0 / count;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+
+    private <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> timed(task));
+        } catch (RejectedExecutionException exception) {
+            rejected.incrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "server is busy, try again later");
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exception) {
+            future.cancel(true);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "server is busy, try again later");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "server is busy, try again later");
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    // latency of the hash itself, time spent waiting in the queue is not included
+    private <T> T timed(Callable<T> task) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return task.call();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            completed.incrementAndGet();
+            totalNanos.addAndGet(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package bang_anas.restful.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+// sliding token expiry without a write per request: UserArgumentResolver reports token use here,
+// extensions are collected in memory and written in periodic batches. a token is only queued once
+// its expiry can move forward by at least refresh-after-millis, and the queue is flushed on shutdown
+@Service
+@Slf4j
+public class TokenActivityService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AuthService authService;
+
+    @Value("${auth.sliding.enabled:true}")
+    private boolean enabled;
+
+    // must stay well below the token lifetime, otherwise a token can expire before its extension is flushed
+    @Value("${auth.sliding.refresh-after-millis:3600000}")
+    private long refreshAfterMillis;
+
+    private final Map<String, Extension> pending = new ConcurrentHashMap<>();
+
+    // username is set for a legacy token of the users table and null for a session token
+    public void touch(String token, long expiredAt, String username) {
+        if (!enabled) {
+            return;
+        }
+
+        long extended = authService.next30Days();
+        if (extended - expiredAt < refreshAfterMillis) {
+            return;
+        }
+
+        pending.merge(token, new Extension(extended, username),
+                (current, next) -> current.expiredAt() >= next.expiredAt() ? current : next);
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    @Scheduled(
+            initialDelayString = "${auth.sliding.flush-interval-millis:10000}",
+            fixedDelayString = "${auth.sliding.flush-interval-millis:10000}"
+    )
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<String, Extension> sessions = new HashMap<>();
+        Map<String, Extension> users = new HashMap<>();
+
+        // remove() hands every entry to exactly one flush, a touch after that is queued again
+        for (String token : pending.keySet()) {
+            Extension extension = pending.remove(token);
+            if (extension == null) {
+                continue;
+            }
+
+            (extension.username() == null ? sessions : users).put(token, extension);
+        }
+
+        // the expired_at guard keeps a late flush from moving an expiry backwards.
+        // users has no index on token, its rows are found by the primary key and the token only rechecked
+        write("UPDATE sessions SET expired_at = ? WHERE token = ? AND expired_at < ?", sessions,
+                (token, extension) -> new Object[]{extension.expiredAt(), token, extension.expiredAt()});
+        write("UPDATE users SET token_expired_at = ? WHERE username = ? AND token = ? AND token_expired_at < ?", users,
+                (token, extension) -> new Object[]{extension.expiredAt(), extension.username(), token, extension.expiredAt()});
+
+        log.debug("token expiry flush: {} sessions, {} user tokens in {} ms",
+                sessions.size(), users.size(), System.currentTimeMillis() - start);
+    }
+
+    // a failed batch goes back to the queue for the next flush instead of being dropped
+    private void write(String sql, Map<String, Extension> extensions, BiFunction<String, Extension, Object[]> row) {
+        if (extensions.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(extensions.size());
+        extensions.forEach((token, extension) -> rows.add(row.apply(token, extension)));
+
+        try {
+            jdbcTemplate.batchUpdate(sql, rows);
+        } catch (DataAccessException e) {
+            log.warn("token expiry flush failed, {} extensions queued again", extensions.size(), e);
+            extensions.forEach((token, extension) -> pending.merge(token, extension,
+                    (current, previous) -> current.expiredAt() >= previous.expiredAt() ? current : previous));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+    private record Extension(long expiredAt, String username) {
+    }
+}
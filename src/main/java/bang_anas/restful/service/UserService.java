@@ -1,5 +1,6 @@
 package bang_anas.restful.service;
 
+import bang_anas.restful.cache.TokenCache;
 import bang_anas.restful.entity.User;
 import bang_anas.restful.model.RegisterUserRequest;
 import bang_anas.restful.model.UpdateUserRequest;
@@ -13,7 +14,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Objects;
@@ -29,7 +30,16 @@ public class UserService {
     @Autowired
     private ValidationService validationService;
 
-    @Transactional
+    @Autowired
+    private PasswordService passwordService;
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // not transactional: no connection is held while bcrypt waits for or runs on the password pool
     public void register(RegisterUserRequest request) {
 
         // validate the data reuqst
@@ -42,15 +52,24 @@ public class UserService {
             );
         }
 
-        // modularity for save data
-        User user = new User();
-        user.setUsername(request.getUsername());
-        user.setPassword(BCrypt.hashpw(
-                request.getPassword(),
-                BCrypt.gensalt()
-        ));
-        user.setName(request.getName());
-        userRepository.save(user);
+        String password = passwordService.hash(request.getPassword());
+
+        // short write transaction, checked again since the hash took a while
+        transactionTemplate.executeWithoutResult(status -> {
+            if (userRepository.existsById(request.getUsername())) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "username already registered"
+                );
+            }
+
+            // modularity for save data
+            User user = new User();
+            user.setUsername(request.getUsername());
+            user.setPassword(password);
+            user.setName(request.getName());
+            userRepository.save(user);
+        });
 
     }
 
@@ -90,18 +109,23 @@ public class UserService {
         validationService.validate(request);
 
         log.info("REQUEST : {}", request);
+
+        // hash before touching the user, so a busy pool leaves nothing half changed to flush
+        String password = Objects.nonNull(request.getPassword())
+                ? passwordService.hash(request.getPassword())
+                : null;
+
         if (Objects.nonNull(request.getName())) {
             user.setName(request.getName());
         }
 
-        if (Objects.nonNull(request.getPassword())) {
-            user.setPassword(BCrypt.hashpw(
-                    request.getPassword(),
-                    BCrypt.gensalt()
-            ));
+        if (Objects.nonNull(password)) {
+            user.setPassword(password);
         }
 
+        // the save is its own short transaction, none is open while hashing
         userRepository.save(user);
+        tokenCache.evictUser(user.getUsername());
 
         log.info("USER : {}", user.getName());
 
@@ -0,0 +1,52 @@
+package bang_anas.restful.benchmark;
+
+import bang_anas.restful.security.BCrypt;
+import bang_anas.restful.security.BCryptEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+// throughput and allocation (gc.alloc.rate.norm) of BCrypt vs BCryptEngine per log_rounds.
+// run the main method from the ide, or: mvn test-compile exec:java -Dexec.classpathScope=test
+//   -Dexec.mainClass=bang_anas.restful.benchmark.BCryptBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BCryptBenchmark {
+
+    @Param({"4", "6", "8", "10"})
+    private int logRounds;
+
+    private String salt;
+
+    @Setup
+    public void setUp() {
+        salt = BCrypt.gensalt(logRounds);
+    }
+
+    @Benchmark
+    public String bcrypt() {
+        return BCrypt.hashpw("test_password_benar", salt);
+    }
+
+    @Benchmark
+    public String bcryptEngine() {
+        return BCryptEngine.hashpw("test_password_benar", salt);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BCryptBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -3,7 +3,13 @@ package bang_anas.restful.controller;
 import bang_anas.restful.entity.Address;
 import bang_anas.restful.entity.Contact;
 import bang_anas.restful.entity.User;
+import bang_anas.restful.model.AddressCountResponse;
 import bang_anas.restful.model.AddressResponse;
+import bang_anas.restful.model.BulkAddressItem;
+import bang_anas.restful.model.BulkAddressRequest;
+import bang_anas.restful.model.BulkAddressResponse;
+import bang_anas.restful.model.BulkAddressResult;
+import bang_anas.restful.model.ContactAddressResponse;
 import bang_anas.restful.model.CreateAddressRequest;
 import bang_anas.restful.model.UpdateAddressRequest;
 import bang_anas.restful.model.WebResponse;
@@ -20,6 +26,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.List;
 import java.util.UUID;
@@ -418,4 +425,305 @@ class AddressControllerTest {
     }
 
 
-}
\ No newline at end of file
+    @Test
+    void addressOfOtherUserNotFound() throws Exception {
+        User other = new User();
+        other.setUsername("test_anas_other");
+        other.setName("other");
+        other.setToken("test_token_other");
+        other.setPassword(BCrypt.hashpw("test_password", BCrypt.gensalt()));
+        other.setTokenExpiredAt(System.currentTimeMillis() + 10000000000L);
+        userRepository.save(other);
+
+        Contact contact = contactRepository.findById("anas-contactId").orElseThrow();
+        Address address = new Address();
+        address.setId("anas-addressId");
+        address.setContact(contact);
+        address.setCity("Jakarta");
+        address.setCountry("Indonesia");
+        addressRepository.save(address);
+
+        UpdateAddressRequest request = new UpdateAddressRequest();
+        request.setCity("Bandung");
+        request.setCountry("Indonesia");
+
+        // the ownership check is part of the statement, another user can not see, change or delete it
+        mockMvc.perform(
+                get("/api/contacts/anas-contactId/addresses/anas-addressId")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token_other")
+        ).andExpectAll(
+                status().isNotFound()
+        );
+
+        mockMvc.perform(
+                put("/api/contacts/anas-contactId/addresses/anas-addressId")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test_token_other")
+        ).andExpectAll(
+                status().isNotFound()
+        );
+
+        mockMvc.perform(
+                delete("/api/contacts/anas-contactId/addresses/anas-addressId")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token_other")
+        ).andExpectAll(
+                status().isNotFound()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("contact is not found", response.getErrors());
+        });
+
+        Address stored = addressRepository.findById("anas-addressId").orElseThrow();
+        assertEquals("Jakarta", stored.getCity());
+    }
+
+
+    @Test
+    void bulkAddresses() throws Exception {
+        Contact contact = contactRepository.findById("anas-contactId").orElseThrow();
+        for (String id : List.of("anas-address-1", "anas-address-2")) {
+            Address address = new Address();
+            address.setId(id);
+            address.setContact(contact);
+            address.setCity("Jakarta");
+            address.setCountry("Indonesia");
+            addressRepository.save(address);
+        }
+
+        BulkAddressRequest request = new BulkAddressRequest(null, List.of(
+                BulkAddressItem.builder().action("create").city("Bandung").country("Indonesia").build(),
+                BulkAddressItem.builder().action("update").id("anas-address-1").city("Surabaya").country("Indonesia").build(),
+                BulkAddressItem.builder().action("delete").id("anas-address-2").build(),
+                BulkAddressItem.builder().action("delete").id("not-addressId").build(),
+                BulkAddressItem.builder().action("create").city("Bogor").build(),
+                BulkAddressItem.builder().action("move").id("anas-address-1").build()
+        ));
+
+        mockMvc.perform(
+                post("/api/contacts/anas-contactId/addresses/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<BulkAddressResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(1, response.getData().getCreated());
+            assertEquals(1, response.getData().getUpdated());
+            assertEquals(1, response.getData().getDeleted());
+            assertEquals(3, response.getData().getFailed());
+
+            List<BulkAddressResult> results = response.getData().getResults();
+            assertEquals(6, results.size());
+            assertTrue(results.get(0).getSuccess());
+            assertTrue(addressRepository.existsById(results.get(0).getId()));
+            assertEquals("address is not found", results.get(3).getMessage());
+            assertFalse(results.get(4).getSuccess());
+            assertEquals("unknown action", results.get(5).getMessage());
+        });
+
+        assertEquals("Surabaya", addressRepository.findById("anas-address-1").orElseThrow().getCity());
+        assertFalse(addressRepository.existsById("anas-address-2"));
+    }
+
+    @Test
+    void bulkAddressesContactNotFound() throws Exception {
+        BulkAddressRequest request = new BulkAddressRequest(null, List.of(
+                BulkAddressItem.builder().action("create").country("Indonesia").build()
+        ));
+
+        mockMvc.perform(
+                post("/api/contacts/not-contactId/addresses/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isNotFound()
+        );
+    }
+
+
+    @Test
+    void searchAddressesAcrossContacts() throws Exception {
+        User user = userRepository.findById("test_anas_user_test").orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            Contact contact = new Contact();
+            contact.setId("anas-contact-" + i);
+            contact.setUser(user);
+            contact.setFirstName("anas " + i);
+            contactRepository.save(contact);
+
+            Address address = new Address();
+            address.setId("anas-address-" + i);
+            address.setContact(contact);
+            address.setCity(i < 2 ? "Bandung" : "Jakarta");
+            address.setCountry("Indonesia");
+            addressRepository.save(address);
+        }
+
+        // same city, another owner: its id sorts between the user's own, so a leak would show on both pages
+        User other = new User();
+        other.setUsername("test_anas_other");
+        other.setName("other");
+        other.setToken("test_token_other");
+        other.setPassword(BCrypt.hashpw("test_password", BCrypt.gensalt()));
+        other.setTokenExpiredAt(System.currentTimeMillis() + 10000000000L);
+        userRepository.save(other);
+
+        Contact otherContact = new Contact();
+        otherContact.setId("other-contact");
+        otherContact.setUser(other);
+        otherContact.setFirstName("other");
+        contactRepository.save(otherContact);
+
+        Address otherAddress = new Address();
+        otherAddress.setId("anas-address-00");
+        otherAddress.setContact(otherContact);
+        otherAddress.setCity("Bandung");
+        otherAddress.setCountry("Indonesia");
+        addressRepository.save(otherAddress);
+
+        MvcResult first = mockMvc.perform(
+                get("/api/addresses")
+                        .queryParam("city", "Bandung")
+                        .queryParam("size", "1")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn();
+        WebResponse<List<ContactAddressResponse>> page = objectMapper.readValue(first.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        assertEquals(1, page.getData().size());
+        assertEquals("anas-address-0", page.getData().getFirst().getId());
+        assertEquals("anas 0", page.getData().getFirst().getFirstName());
+        assertTrue(page.getPaging().getHasMore());
+
+        mockMvc.perform(
+                get("/api/addresses")
+                        .queryParam("city", "Bandung")
+                        .queryParam("size", "1")
+                        .queryParam("cursor", page.getPaging().getNext())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<ContactAddressResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("anas-address-1", response.getData().getFirst().getId());
+            assertFalse(response.getPaging().getHasMore());
+        });
+
+        mockMvc.perform(
+                get("/api/addresses/counts")
+                        .queryParam("by", "city")
+                        .queryParam("country", "Indonesia")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<AddressCountResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(2, response.getData().size());
+            assertEquals("Bandung", response.getData().getFirst().getValue());
+            assertEquals(2L, response.getData().getFirst().getCount());
+        });
+
+        mockMvc.perform(
+                get("/api/addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isBadRequest()
+        );
+    }
+
+
+    @Test
+    void listAddressPagesAndStream() throws Exception {
+        Contact contact = contactRepository.findById("anas-contactId").orElseThrow();
+        for (int i = 0; i < 5; i++) {
+            Address address = new Address();
+            address.setId("anas-address-" + i);
+            address.setCity("YKC" + i);
+            address.setCountry("Indonesia");
+            address.setContact(contact);
+            addressRepository.save(address);
+        }
+
+        MvcResult first = mockMvc.perform(
+                get("/api/contacts/anas-contactId/addresses")
+                        .queryParam("size", "3")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn();
+        WebResponse<List<AddressResponse>> page = objectMapper.readValue(first.getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        assertEquals(3, page.getData().size());
+        assertTrue(page.getPaging().getHasMore());
+
+        mockMvc.perform(
+                get("/api/contacts/anas-contactId/addresses")
+                        .queryParam("size", "3")
+                        .queryParam("cursor", page.getPaging().getNext())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<AddressResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(List.of("anas-address-3", "anas-address-4"),
+                    response.getData().stream().map(AddressResponse::getId).toList());
+            assertFalse(response.getPaging().getHasMore());
+        });
+
+        mockMvc.perform(
+                get("/api/contacts/anas-contactId/addresses")
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            String[] lines = result.getResponse().getContentAsString().split("\n");
+            assertEquals(5, lines.length);
+            assertEquals("anas-address-0", objectMapper.readValue(lines[0], AddressResponse.class).getId());
+        });
+    }
+
+
+    @Test
+    void bulkAddressesNullItem() throws Exception {
+        mockMvc.perform(
+                post("/api/contacts/anas-contactId/addresses/bulk")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"items": [null, {"action": "create", "country": "Indonesia"}]}
+                                """)
+                        .header("X-API-TOKEN", "test_token")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<BulkAddressResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(1, response.getData().getFailed());
+            assertEquals(1, response.getData().getCreated());
+            assertEquals("item is empty", response.getData().getResults().getFirst().getMessage());
+        });
+    }
+
+}
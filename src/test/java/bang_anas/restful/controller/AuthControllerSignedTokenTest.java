@@ -0,0 +1,158 @@
+package bang_anas.restful.controller;
+
+import bang_anas.restful.entity.User;
+import bang_anas.restful.model.LoginUserRequest;
+import bang_anas.restful.model.TokenResponse;
+import bang_anas.restful.model.UserResponse;
+import bang_anas.restful.model.WebResponse;
+import bang_anas.restful.repository.AddressRepository;
+import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.security.BCrypt;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = {
+        "auth.token.mode=signed",
+        "auth.token.secret=c2lnbmVkLXRva2VuLXRlc3Qtc2VjcmV0LWtleS0wMTIzNDU="
+})
+@AutoConfigureMockMvc
+class AuthControllerSignedTokenTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        User user = new User();
+        user.setName("Test_anas");
+        user.setUsername("test_anas");
+        user.setPassword(BCrypt.hashpw("test_password_benar", BCrypt.gensalt()));
+        userRepository.save(user);
+    }
+
+    private String login() throws Exception {
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername("test_anas");
+        request.setPassword("test_password_benar");
+
+        String content = mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<TokenResponse> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData().getToken();
+    }
+
+    @Test
+    void loginSignedTokenSuccess() throws Exception {
+        String token = login();
+
+        // nothing is written to the users row in signed mode
+        User userDb = userRepository.findById("test_anas").orElseThrow();
+        assertNull(userDb.getToken());
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", token)
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<UserResponse> response = objectMapper.readValue(
+                    result.getResponse().getContentAsString(),
+                    new TypeReference<>() {
+                    }
+            );
+
+            assertNull(response.getErrors());
+            assertEquals("test_anas", response.getData().getUsername());
+            assertEquals("Test_anas", response.getData().getName());
+        });
+    }
+
+    @Test
+    void signedTokenForged() throws Exception {
+        String token = login();
+        String forged = token.substring(0, token.lastIndexOf('.') + 1) + "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", forged)
+        ).andExpectAll(
+                status().isUnauthorized()
+        );
+    }
+
+    @Test
+    void signedTokenRevokedAfterLogout() throws Exception {
+        String token = login();
+
+        mockMvc.perform(
+                delete("/api/auth/logout")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", token)
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", token)
+        ).andExpectAll(
+                status().isUnauthorized()
+        );
+    }
+
+
+    @Test
+    void signedTokenOfDeletedUser() throws Exception {
+        String token = login();
+
+        userRepository.deleteById("test_anas");
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", token)
+        ).andExpectAll(
+                status().isUnauthorized()
+        );
+    }
+
+}
@@ -1,14 +1,19 @@
 package bang_anas.restful.controller;
 
+import bang_anas.restful.entity.Session;
 import bang_anas.restful.entity.User;
 import bang_anas.restful.model.LoginUserRequest;
 import bang_anas.restful.model.TokenResponse;
 import bang_anas.restful.model.WebResponse;
 import bang_anas.restful.repository.AddressRepository;
 import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.SessionRepository;
 import bang_anas.restful.repository.UserRepository;
 import bang_anas.restful.security.BCrypt;
 import bang_anas.restful.service.AuthService;
+import bang_anas.restful.service.ExpiredTokenSweeper;
+import bang_anas.restful.service.PasswordService;
+import bang_anas.restful.service.TokenActivityService;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -41,9 +46,21 @@ class AuthControllerTest {
     @Autowired
     private ContactRepository contactRepository;
 
+    @Autowired
+    private SessionRepository sessionRepository;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private PasswordService passwordService;
+
+    @Autowired
+    private ExpiredTokenSweeper expiredTokenSweeper;
+
+    @Autowired
+    private TokenActivityService tokenActivityService;
+
     @BeforeEach
     void setUp() {
         addressRepository.deleteAll();
@@ -146,10 +163,15 @@ class AuthControllerTest {
             assertNotNull(response.getData().getToken());
             assertNotNull(response.getData().getExpiredAt());
 
+            Session session = sessionRepository.findById(response.getData().getToken()).orElse(null);
+            assertNotNull(session);
+            assertEquals("test_anas", session.getUser().getUsername());
+            assertEquals(response.getData().getExpiredAt(), session.getExpiredAt());
+
+            // the users row is not written on login
             User userDb = userRepository.findById("test_anas").orElse(null);
             assertNotNull(userDb);
-            assertEquals(response.getData().getToken(), userDb.getToken());
-            assertEquals(response.getData().getExpiredAt(), userDb.getTokenExpiredAt());
+            assertNull(userDb.getToken());
 
             System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response.getData()));
         });
@@ -212,4 +234,183 @@ class AuthControllerTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void loginRehashesPasswordWithOtherCost() throws Exception {
+        User user = new User();
+        user.setName("Test_anas");
+        user.setUsername("test_anas");
+        user.setPassword(BCrypt.hashpw("test_password_benar", BCrypt.gensalt(4)));
+        userRepository.save(user);
+
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername("test_anas");
+        request.setPassword("test_password_benar");
+
+        mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            User userDb = userRepository.findById("test_anas").orElse(null);
+            assertNotNull(userDb);
+            assertFalse(passwordService.needsRehash(userDb.getPassword()));
+            assertTrue(BCrypt.checkpw("test_password_benar", userDb.getPassword()));
+        });
+    }
+
+    @Test
+    void loginTooManyAttempts() throws Exception {
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername("test_anas_flood");
+        request.setPassword("tes_password");
+
+        // the bucket starts full, every attempt over its capacity is rejected before the user lookup
+        for (int i = 0; i < 10; i++) {
+            mockMvc.perform(
+                    post("/api/auth/login")
+                            .accept(MediaType.APPLICATION_JSON)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request))
+            ).andExpectAll(
+                    status().isUnauthorized()
+            );
+        }
+
+        mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isTooManyRequests()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(
+                    result.getResponse().getContentAsString(),
+                    new TypeReference<>() {
+                    }
+            );
+
+            assertNotNull(response.getErrors());
+        });
+    }
+
+    @Test
+    void logoutOneDeviceKeepsOtherSessions() throws Exception {
+        User user = new User();
+        user.setName("Test_anas");
+        user.setUsername("test_anas");
+        user.setPassword(BCrypt.hashpw("test_password_benar", BCrypt.gensalt()));
+        userRepository.save(user);
+
+        String laptop = login("test_anas", "test_password_benar", "laptop");
+        String phone = login("test_anas", "test_password_benar", "phone");
+        assertNotEquals(laptop, phone);
+
+        mockMvc.perform(
+                delete("/api/auth/logout")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", laptop)
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        assertFalse(sessionRepository.existsById(laptop));
+        assertTrue(sessionRepository.existsById(phone));
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", laptop)
+        ).andExpectAll(
+                status().isUnauthorized()
+        );
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", phone)
+        ).andExpectAll(
+                status().isOk()
+        );
+    }
+
+    private String login(String username, String password, String device) throws Exception {
+        LoginUserRequest request = new LoginUserRequest();
+        request.setUsername(username);
+        request.setPassword(password);
+        request.setDevice(device);
+
+        String content = mockMvc.perform(
+                post("/api/auth/login")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<TokenResponse> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData().getToken();
+    }
+
+    @Test
+    void sweepExpiredTokens() {
+        User user = new User();
+        user.setUsername("test_anas");
+        user.setName("Test_Anas");
+        user.setToken("test_token_expired");
+        user.setPassword(BCrypt.hashpw("test_password", BCrypt.gensalt()));
+        user.setTokenExpiredAt(System.currentTimeMillis() - 1000);
+        userRepository.save(user);
+
+        Session expired = new Session("test_session_expired", user, "laptop",
+                System.currentTimeMillis() - 1000, System.currentTimeMillis() - 2000);
+        Session live = new Session("test_session_live", user, "phone",
+                System.currentTimeMillis() + 100000, System.currentTimeMillis());
+        sessionRepository.save(expired);
+        sessionRepository.save(live);
+
+        ExpiredTokenSweeper.SweepResult result = expiredTokenSweeper.sweep();
+        assertTrue(result.sessions() >= 1);
+        assertTrue(result.users() >= 1);
+
+        assertFalse(sessionRepository.existsById("test_session_expired"));
+        assertTrue(sessionRepository.existsById("test_session_live"));
+
+        User userDb = userRepository.findById("test_anas").orElse(null);
+        assertNotNull(userDb);
+        assertNull(userDb.getToken());
+        assertNull(userDb.getTokenExpiredAt());
+    }
+
+    @Test
+    void slidingExpiryExtendsSession() throws Exception {
+        User user = new User();
+        user.setUsername("test_anas");
+        user.setName("Test_Anas");
+        user.setPassword(BCrypt.hashpw("test_password", BCrypt.gensalt()));
+        userRepository.save(user);
+
+        long expiredAt = System.currentTimeMillis() + 60000;
+        sessionRepository.save(new Session("test_session_sliding", user, "laptop", expiredAt, System.currentTimeMillis()));
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_session_sliding")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        // the extension is written behind, not by the request itself
+        assertEquals(expiredAt, sessionRepository.findById("test_session_sliding").orElseThrow().getExpiredAt());
+
+        tokenActivityService.flush();
+        assertTrue(sessionRepository.findById("test_session_sliding").orElseThrow().getExpiredAt() > expiredAt);
+    }
+
+}
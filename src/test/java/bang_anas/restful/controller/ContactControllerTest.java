@@ -1,14 +1,20 @@
 package bang_anas.restful.controller;
 
+import bang_anas.restful.cache.ContactSearchCache;
+import bang_anas.restful.entity.Address;
 import bang_anas.restful.entity.Contact;
 import bang_anas.restful.entity.User;
 import bang_anas.restful.model.ContactResponse;
 import bang_anas.restful.model.CreateContactRequest;
+import bang_anas.restful.model.DomainCountResponse;
+import bang_anas.restful.model.ImportContactResponse;
+import bang_anas.restful.model.PagingResponse;
 import bang_anas.restful.model.UpdateContactRequest;
 import bang_anas.restful.model.WebResponse;
 import bang_anas.restful.repository.AddressRepository;
 import bang_anas.restful.repository.ContactRepository;
 import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.search.ContactSearchIndex;
 import bang_anas.restful.security.BCrypt;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -18,9 +24,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -49,6 +58,15 @@ class ContactControllerTest {
     @Autowired
     private AddressRepository addressRepository;
 
+    @Autowired
+    private ContactSearchIndex contactSearchIndex;
+
+    @Autowired
+    private ContactSearchCache contactSearchCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     void setUp(){
 
@@ -482,5 +500,536 @@ class ContactControllerTest {
         );
     }
 
+    @Test
+    void searchUsesTrigramIndex() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+
+        for (int i = 0; i < 20; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Tsuyoi " + i);
+            contact.setLastName("Guege " + i);
+            contact.setEmail("Nyueno" + i + "@example.com");
+            contact.setPhone("9238423432");
+            contactRepository.save(contact);
+        }
+
+        // without grams the candidates are empty, so the search really goes through the index
+        jdbcTemplate.update("DELETE FROM contact_ngrams");
+        assertEquals(0, searchByName("tsuyoi").size());
+
+        contactSearchIndex.rebuild();
+        assertEquals(10, searchByName("TSUYOI").size());
+        assertEquals(0, searchByName("tsuyoix").size());
+    }
+
+    private List<ContactResponse> searchByName(String name) throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("name", name)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData();
+    }
+
+
+    @Test
+    void searchWithCursor() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+
+        for (int i = 0; i < 25; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            // a few equal first names so the id tie breaker is exercised
+            contact.setFirstName("anas " + (i % 7));
+            contact.setLastName("Guege " + i);
+            contact.setEmail("Nyueno" + i + "@example.com");
+            contact.setPhone("9238423432");
+            contactRepository.save(contact);
+        }
+
+        Set<String> seen = new HashSet<>();
+        String cursor = "";
+        int pages = 0;
+        while (cursor != null) {
+            String content = mockMvc.perform(
+                    get("/api/contacts")
+                            .queryParam("size", "10")
+                            .queryParam("cursor", cursor)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header("X-API-TOKEN", "test-token-anas")
+            ).andExpectAll(
+                    status().isOk()
+            ).andReturn().getResponse().getContentAsString();
+
+            WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertNull(response.getPaging().getTotalPage());
+            assertEquals(10, response.getPaging().getSize());
+            response.getData().forEach(contact -> assertTrue(seen.add(contact.getId())));
+
+            cursor = response.getPaging().getNext();
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+    }
+
+    @Test
+    void searchWithInvalidCursor() throws Exception {
+        mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("cursor", "not-a-cursor")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNotNull(response.getErrors());
+        });
+    }
+
+
+    @Test
+    void searchWithTotalKinds() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+        saveContacts(user, 15);
+
+        PagingResponse paging = searchPaging("approximate", 0);
+        assertEquals("approximate", paging.getTotalKind());
+        assertEquals(2, paging.getTotalPage());
+
+        // the listener drops the cached total of the user on every contact write
+        saveContacts(user, 6);
+        assertEquals(3, searchPaging("approximate", 0).getTotalPage());
+
+        paging = searchPaging("has-more", 0);
+        assertEquals("has-more", paging.getTotalKind());
+        assertNull(paging.getTotalPage());
+        assertTrue(paging.getHasMore());
+        assertFalse(searchPaging("has-more", 2).getHasMore());
+
+        paging = searchPaging("none", 0);
+        assertEquals("none", paging.getTotalKind());
+        assertNull(paging.getTotalPage());
+        assertNull(paging.getHasMore());
+
+        mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("total", "maybe")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isBadRequest()
+        );
+    }
+
+    private void saveContacts(User user, int count) {
+        for (int i = 0; i < count; i++) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("anas " + i);
+            contact.setLastName("Guege " + i);
+            contact.setEmail("Nyueno" + i + "@example.com");
+            contact.setPhone("9238423432");
+            contactRepository.save(contact);
+        }
+    }
+
+    private PagingResponse searchPaging(String total, int page) throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("total", total)
+                        .queryParam("page", String.valueOf(page))
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        assertNull(response.getErrors());
+        return response.getPaging();
+    }
+
+
+    @Test
+    void searchServedFromCacheUntilContactWrite() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+        saveContacts(user, 3);
+
+        assertEquals(3, searchByName("anas").size());
+        long hits = contactSearchCache.getHits();
+        assertEquals(3, searchByName("anas").size());
+        assertEquals(hits + 1, contactSearchCache.getHits());
+
+        CreateContactRequest request = new CreateContactRequest();
+        request.setFirstName("Anas");
+        request.setLastName("Tsuyoi");
+        mockMvc.perform(
+                post("/api/contacts")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        // the create bumped the version of the user, the cached page is not served anymore
+        assertEquals(4, searchByName("anas").size());
+        assertEquals(hits + 1, contactSearchCache.getHits());
+    }
+
+
+    @Test
+    void exportContacts() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+        saveContacts(user, 3);
+
+        Contact contact = contactRepository.findAll().getFirst();
+        for (int i = 0; i < 2; i++) {
+            Address address = new Address();
+            address.setId(UUID.randomUUID().toString());
+            address.setContact(contact);
+            address.setStreet("Jalan, " + i);
+            address.setCity("Jakarta");
+            address.setProvince("DKI");
+            address.setCountry("Indonesia");
+            address.setPostalCode("12345");
+            addressRepository.save(address);
+        }
+
+        String ndjson = mockMvc.perform(
+                get("/api/contacts/export")
+                        .queryParam("addresses", "true")
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk(),
+                content().contentTypeCompatibleWith("application/x-ndjson")
+        ).andReturn().getResponse().getContentAsString();
+
+        String[] lines = ndjson.split("\n");
+        assertEquals(3, lines.length);
+        int addresses = 0;
+        for (String line : lines) {
+            addresses += objectMapper.readTree(line).get("addresses").size();
+        }
+        assertEquals(2, addresses);
+
+        String csv = mockMvc.perform(
+                get("/api/contacts/export")
+                        .queryParam("format", "csv")
+                        .queryParam("addresses", "true")
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk(),
+                content().contentTypeCompatibleWith("text/csv")
+        ).andReturn().getResponse().getContentAsString();
+
+        lines = csv.split("\r\n");
+        assertEquals("id,firstName,lastName,email,phone,addressId,street,city,province,country,postalCode", lines[0]);
+        // one line per address, one for each contact without any
+        assertEquals(1 + 2 + 2, lines.length);
+        assertTrue(csv.contains("\"Jalan, 0\""));
+
+        mockMvc.perform(
+                get("/api/contacts/export")
+                        .queryParam("format", "xml")
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isBadRequest()
+        );
+    }
+
+
+    @Test
+    void importContacts() throws Exception {
+        String body = """
+                [
+                  {"firstName": "Impor", "lastName": "Satu", "email": "satu@example.com"},
+                  {"firstName": "", "lastName": "Kosong"},
+                  {"firstName": "Impor", "lastName": "Dua", "phone": "0812"}
+                ]
+                """;
+
+        mockMvc.perform(
+                post("/api/contacts/import")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ImportContactResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(2, response.getData().getImported());
+            assertEquals(1, response.getData().getFailed());
+            assertEquals(1, response.getData().getErrors().getFirst().getIndex());
+        });
+
+        String ndjson = """
+                {"firstName": "Impor", "lastName": "Tiga"}
+                {"firstName": "Impor", "lastName": "Empat", "email": "bukan email"}
+                """;
+
+        mockMvc.perform(
+                post("/api/contacts/import")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(ndjson)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ImportContactResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(1, response.getData().getImported());
+            assertEquals(1, response.getData().getFailed());
+        });
+
+        // a record of the wrong shape fails alone, the records after it are still imported
+        String mismatched = """
+                {"firstName": {"nested": true}, "lastName": "Salah"}
+                {"firstName": "Impor", "lastName": "Lima"}
+                """;
+
+        mockMvc.perform(
+                post("/api/contacts/import")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(mismatched)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ImportContactResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(1, response.getData().getImported());
+            assertEquals(1, response.getData().getFailed());
+            assertEquals(0, response.getData().getErrors().getFirst().getIndex());
+        });
+
+        // imported rows are in the search index like the ones created one by one
+        assertEquals(4, searchByName("impor").size());
+    }
+
+
+    @Test
+    void autocompleteContacts() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+        saveContacts(user, 3);
+
+        Contact budi = new Contact();
+        budi.setId(UUID.randomUUID().toString());
+        budi.setUser(user);
+        budi.setFirstName("Daniel");
+        budi.setLastName("Budiánto");
+        contactRepository.save(budi);
+
+        assertEquals(List.of(budi.getId()), autocomplete("BUDIA").stream().map(ContactResponse::getId).toList());
+        assertEquals(3, autocomplete("anas").size());
+
+        // writes after the index was built are applied to it
+        budi.setLastName("Santoso");
+        contactRepository.save(budi);
+        assertEquals(0, autocomplete("budi").size());
+        assertEquals(1, autocomplete("santo").size());
+
+        contactRepository.delete(budi);
+        assertEquals(0, autocomplete("santo").size());
+    }
+
+    private List<ContactResponse> autocomplete(String prefix) throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts/autocomplete")
+                        .queryParam("prefix", prefix)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        assertNull(response.getErrors());
+        return response.getData();
+    }
+
+
+    @Test
+    void searchPhoneIgnoresFormatting() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+        String[] phones = {"+62 812-3456", "0812 3456", "(021) 555-1234"};
+        for (String phone : phones) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Telepon");
+            contact.setPhone(phone);
+            contactRepository.save(contact);
+        }
+
+        assertEquals(2, searchContacts("phone", "0812-3456").size());
+        assertEquals(2, searchContacts("phone", "812 34").size());
+        assertEquals(1, searchContacts("phone", "555 12").size());
+
+        assertEquals(2, searchContacts("phoneSuffix", "3456").size());
+        assertEquals(1, searchContacts("phoneSuffix", "55-1234").size());
+        assertEquals(0, searchContacts("phoneSuffix", "812").size());
+    }
+
+    @Test
+    void searchPhoneSuffixKeepsLeadingZeros() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+        String[] phones = {"0812 0123", "0812 9123", "0811 1000"};
+        for (String phone : phones) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Telepon");
+            contact.setPhone(phone);
+            contactRepository.save(contact);
+        }
+
+        assertEquals(1, searchContacts("phoneSuffix", "0123").size());
+        assertEquals(2, searchContacts("phoneSuffix", "123").size());
+        assertEquals(1, searchContacts("phoneSuffix", "000").size());
+    }
+
+    private List<ContactResponse> searchContacts(String param, String value) throws Exception {
+        String content = mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam(param, value)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        assertNull(response.getErrors());
+        return response.getData();
+    }
+
+
+    @Test
+    void searchAndCountByDomain() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+        String[] emails = {"satu@acme.com", "dua@Acme.COM", "tiga@example.com", null};
+        for (String email : emails) {
+            Contact contact = new Contact();
+            contact.setId(UUID.randomUUID().toString());
+            contact.setUser(user);
+            contact.setFirstName("Domain");
+            contact.setEmail(email);
+            contactRepository.save(contact);
+        }
+
+        assertEquals(2, searchContacts("domain", "@acme.com").size());
+        assertEquals(1, searchContacts("domain", "example.com").size());
+        assertEquals(0, searchContacts("domain", "acme").size());
+
+        String content = mockMvc.perform(
+                get("/api/contacts/domains")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<DomainCountResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        assertNull(response.getErrors());
+        assertEquals(2, response.getData().size());
+        assertEquals("acme.com", response.getData().get(0).getDomain());
+        assertEquals(2, response.getData().get(0).getCount());
+        assertEquals("example.com", response.getData().get(1).getDomain());
+        assertEquals(1, response.getData().get(1).getCount());
+    }
+
+
+    @Test
+    void expandAddresses() throws Exception {
+        User user = userRepository.findById("test-anas").orElseThrow();
+        saveContacts(user, 3);
+
+        List<Contact> contacts = contactRepository.findAll();
+        for (int i = 0; i < contacts.size(); i++) {
+            for (int j = 0; j <= i; j++) {
+                Address address = new Address();
+                address.setId(UUID.randomUUID().toString());
+                address.setContact(contacts.get(i));
+                address.setCity("Kota " + j);
+                address.setCountry("Indonesia");
+                addressRepository.save(address);
+            }
+        }
+
+        String content = mockMvc.perform(
+                get("/api/contacts")
+                        .queryParam("expand", "addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<ContactResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        assertNull(response.getErrors());
+        assertEquals(3, response.getData().size());
+        assertEquals(1 + 2 + 3, response.getData().stream().mapToInt(contact -> contact.getAddresses().size()).sum());
+
+        Contact last = contacts.getLast();
+        mockMvc.perform(
+                get("/api/contacts/" + last.getId())
+                        .queryParam("expand", "addresses")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ContactResponse> contact = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(3, contact.getData().getAddresses().size());
+        });
+
+        // without expand the addresses are not loaded nor sent
+        mockMvc.perform(
+                get("/api/contacts/" + last.getId())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk(),
+                jsonPath("$.data.addresses").doesNotExist()
+        );
+
+        mockMvc.perform(
+                get("/api/contacts/" + last.getId())
+                        .queryParam("expand", "user")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isBadRequest()
+        );
+    }
 
-}
\ No newline at end of file
+}
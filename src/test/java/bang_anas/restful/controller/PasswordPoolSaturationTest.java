@@ -0,0 +1,170 @@
+package bang_anas.restful.controller;
+
+import bang_anas.restful.entity.User;
+import bang_anas.restful.model.CreateContactRequest;
+import bang_anas.restful.model.LoginUserRequest;
+import bang_anas.restful.model.RegisterUserRequest;
+import bang_anas.restful.model.WebResponse;
+import bang_anas.restful.repository.AddressRepository;
+import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.SessionRepository;
+import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.service.PasswordService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// one bcrypt thread and one queue slot, with a cost high enough that both stay taken for a few seconds,
+// and as many connections as there are bcrypt slots
+@SpringBootTest(properties = {
+        "auth.password.threads=1",
+        "auth.password.queue-size=1",
+        "auth.password.log-rounds=15",
+        "auth.password.timeout-millis=60000",
+        "spring.datasource.hikari.minimum-idle=2",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.connection-timeout=1000"
+})
+@AutoConfigureMockMvc
+class PasswordPoolSaturationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private PasswordService passwordService;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        sessionRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void registerRejectedWhenPoolIsFull() throws Exception {
+        long rejected = passwordService.getRejected();
+
+        // one hash running, one waiting in the queue
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> passwordService.hash("running"));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> passwordService.hash("queued"));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (passwordService.getActiveCount() < 1 || passwordService.getQueueDepth() < 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "bcrypt pool did not fill up");
+            Thread.sleep(5);
+        }
+
+        RegisterUserRequest request = new RegisterUserRequest();
+        request.setUsername("test_anas-busy");
+        request.setPassword("test_password");
+        request.setName("test_name");
+
+        mockMvc.perform(
+                post("/api/users")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpectAll(
+                status().isServiceUnavailable()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(),
+                    new TypeReference<>() {
+                    });
+            assertEquals("server is busy, try again later", response.getErrors());
+        });
+
+        assertEquals(rejected + 1, passwordService.getRejected());
+        assertFalse(userRepository.existsById("test_anas-busy"));
+
+        // the work that was accepted still completes
+        assertNotNull(running.get());
+        assertNotNull(queued.get());
+    }
+
+    @Test
+    void crudGetsConnectionWhileLoginsWaitOnPool() throws Exception {
+        User user = new User();
+        user.setUsername("test-anas");
+        user.setPassword(passwordService.hash("test-password-anas"));
+        user.setName("Test-Name-Anas");
+        user.setToken("test-token-anas");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 1000000);
+        userRepository.save(user);
+
+        LoginUserRequest login = new LoginUserRequest();
+        login.setUsername("test-anas");
+        login.setPassword("test-password-anas");
+        String body = objectMapper.writeValueAsString(login);
+
+        // two logins take both bcrypt slots, as many as there are connections
+        CompletableFuture<Integer> running = CompletableFuture.supplyAsync(() -> login(body));
+        CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(() -> login(body));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (passwordService.getActiveCount() < 1 || passwordService.getQueueDepth() < 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "bcrypt pool did not fill up");
+            Thread.sleep(5);
+        }
+
+        CreateContactRequest request = new CreateContactRequest();
+        request.setFirstName("Anas");
+        request.setLastName("Khairun");
+        request.setEmail("anas@example.com");
+        request.setPhone("08123456789");
+
+        // a login waiting on bcrypt holds no connection, so this does not time out on the pool
+        mockMvc.perform(
+                post("/api/contacts")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", "test-token-anas")
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        assertEquals(1, contactRepository.count());
+        assertEquals(200, running.get());
+        assertEquals(200, queued.get());
+    }
+
+    private int login(String body) {
+        try {
+            return mockMvc.perform(
+                    post("/api/auth/login")
+                            .accept(MediaType.APPLICATION_JSON)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body)
+            ).andReturn().getResponse().getStatus();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package bang_anas.restful.controller;
 
+import bang_anas.restful.cache.TokenCache;
 import bang_anas.restful.entity.User;
 import bang_anas.restful.model.RegisterUserRequest;
 import bang_anas.restful.model.UpdateUserRequest;
@@ -45,6 +46,9 @@ class UserControllerTest {
     @Autowired
     private ContactRepository contactRepository;
 
+    @Autowired
+    private TokenCache tokenCache;
+
 
     @BeforeEach
     void setUp() {
@@ -315,5 +319,58 @@ class UserControllerTest {
         });
     }
 
+    @Test
+    void getUserServedFromTokenCache() throws Exception{
+        User user = new User();
+        user.setUsername("test_anas-user-test");
+        user.setName("test_anas");
+        user.setToken("test_token_cache");
+        user.setPassword(BCrypt.hashpw("test_password", BCrypt.gensalt()));
+        user.setTokenExpiredAt(System.currentTimeMillis() + 10000000000L);
+        userRepository.save(user);
+
+        long hits = tokenCache.getHits();
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(
+                    get("/api/users/current")
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header("X-API-TOKEN", user.getToken())
+            ).andExpectAll(
+                    status().isOk()
+            );
+        }
+        assertEquals(hits + 2, tokenCache.getHits());
+
+        // updating the user evicts the cached entry, so the next request sees the new name
+        UpdateUserRequest request = new UpdateUserRequest();
+        request.setName("test_anas_update");
+
+        mockMvc.perform(
+                patch("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+                        .header("X-API-TOKEN", user.getToken())
+        ).andExpectAll(
+                status().isOk()
+        );
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", user.getToken())
+        ).andExpectAll(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<UserResponse> response = objectMapper.readValue(
+                    result.getResponse().getContentAsString(),
+                    new TypeReference<>() {
+                    }
+            );
+
+            assertNull(response.getErrors());
+            assertEquals("test_anas_update", response.getData().getName());
+        });
+    }
 
 }
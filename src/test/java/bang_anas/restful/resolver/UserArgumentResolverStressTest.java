@@ -0,0 +1,98 @@
+package bang_anas.restful.resolver;
+
+import bang_anas.restful.entity.User;
+import bang_anas.restful.repository.AddressRepository;
+import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.security.BCrypt;
+import bang_anas.restful.security.TokenBloomFilter;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+class UserArgumentResolverStressTest {
+
+    private static final int FLOOD = 5000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private TokenBloomFilter tokenBloomFilter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        User user = new User();
+        user.setUsername("test_anas-flood");
+        user.setName("test_anas");
+        user.setToken("test_token_flood");
+        user.setPassword(BCrypt.hashpw("test_password", BCrypt.gensalt()));
+        user.setTokenExpiredAt(System.currentTimeMillis() + 10000000000L);
+        userRepository.save(user);
+    }
+
+    @Test
+    void randomTokenFloodDoesNotReachDatabase() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long statements = statistics.getPrepareStatementCount();
+        long rejections = tokenBloomFilter.getRejections();
+
+        for (int i = 0; i < FLOOD; i++) {
+            mockMvc.perform(
+                    get("/api/users/current")
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header("X-API-TOKEN", UUID.randomUUID().toString())
+            ).andExpectAll(
+                    status().isUnauthorized()
+            );
+        }
+
+        long queries = statistics.getPrepareStatementCount() - statements;
+
+        // only bloom filter false positives may reach the database,
+        // each one costs two statements: the sessions lookup, then the legacy users lookup
+        long falsePositives = queries / 2;
+        assertTrue(falsePositives <= FLOOD / 100, queries + " statements for " + FLOOD + " random tokens");
+        assertTrue(tokenBloomFilter.getRejections() - rejections >= FLOOD - falsePositives);
+
+        // a real token still passes the filter
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("X-API-TOKEN", "test_token_flood")
+        ).andExpectAll(
+                status().isOk()
+        );
+    }
+}
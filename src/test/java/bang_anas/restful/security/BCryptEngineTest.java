@@ -0,0 +1,56 @@
+package bang_anas.restful.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BCryptEngineTest {
+
+    @Test
+    void sameHashAsBCrypt() {
+        Random random = new Random(42);
+        String[] prefixes = {"$2a", "$2b", "$2y"};
+
+        for (int i = 0; i < 100; i++) {
+            String password = randomPassword(random);
+            String salt = BCrypt.gensalt(prefixes[i % prefixes.length], 4 + random.nextInt(3));
+
+            assertEquals(BCrypt.hashpw(password, salt), BCryptEngine.hashpw(password, salt));
+
+            // revision x (sign extension bug) and the original revision without minor
+            String saltX = "$2x" + salt.substring(3);
+            assertEquals(BCrypt.hashpw(password, saltX), BCryptEngine.hashpw(password, saltX));
+
+            String saltNoMinor = "$2" + salt.substring(3);
+            assertEquals(BCrypt.hashpw(password, saltNoMinor), BCryptEngine.hashpw(password, saltNoMinor));
+        }
+    }
+
+    @Test
+    void checkExistingHash() {
+        String hashed = BCrypt.hashpw("test_password", BCrypt.gensalt(6));
+
+        assertTrue(BCryptEngine.checkpw("test_password", hashed));
+        assertFalse(BCryptEngine.checkpw("test_password_salah", hashed));
+        assertTrue(BCrypt.checkpw("test_password", BCryptEngine.hashpw("test_password", BCrypt.gensalt(6))));
+    }
+
+    @Test
+    void invalidSalt() {
+        assertThrows(IllegalArgumentException.class, () -> BCryptEngine.hashpw("test_password", null));
+        assertThrows(IllegalArgumentException.class, () -> BCryptEngine.hashpw("test_password", "$2a$10$tooshort"));
+        assertThrows(IllegalArgumentException.class, () -> BCryptEngine.hashpw("test_password", "$2a$03$" + "a".repeat(22)));
+    }
+
+    // non empty, below the 72 byte bcrypt limit, with some multi byte characters
+    private String randomPassword(Random random) {
+        int length = 1 + random.nextInt(30);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append((char) (random.nextInt(4) == 0 ? 0x80 + random.nextInt(0x700) : 32 + random.nextInt(90)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package bang_anas.restful.service;
+
+import bang_anas.restful.entity.Address;
+import bang_anas.restful.entity.Contact;
+import bang_anas.restful.entity.User;
+import bang_anas.restful.model.UpdateAddressRequest;
+import bang_anas.restful.repository.AddressRepository;
+import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.security.BCrypt;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// latency of the two query address access (contact, then address) vs the single ownership checked
+// statements of AddressService, with THREADS concurrent callers. reports mean / p50 / p99 per operation
+// and fails when the single statement is not faster on average. opt in: mvn test -Pperf
+@Tag("perf")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.show_sql=false")
+class AddressAccessLatencyTest {
+
+    private static final int THREADS = 16;
+
+    private static final int OPERATIONS = 300;
+
+    private static final int ADDRESSES = 200;
+
+    @Autowired
+    private AddressService addressService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user;
+
+    private String contactId;
+
+    private final List<String> addressIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user = new User();
+        user.setUsername("test-anas");
+        user.setPassword(BCrypt.hashpw("test-password-anas", BCrypt.gensalt()));
+        user.setName("Test-Name-Anas");
+        user.setToken("test-token-anas");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 1000000);
+        userRepository.save(user);
+
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("anas");
+        contactRepository.save(contact);
+        contactId = contact.getId();
+
+        addressIds.clear();
+        for (int i = 0; i < ADDRESSES; i++) {
+            Address address = new Address();
+            address.setId(UUID.randomUUID().toString());
+            address.setContact(contact);
+            address.setCity("Jakarta");
+            address.setCountry("Indonesia");
+            addressRepository.save(address);
+            addressIds.add(address.getId());
+        }
+    }
+
+    @Test
+    void getLatency(TestReporter reporter) throws Exception {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        long[] before = measure(addressId -> readOnly.executeWithoutResult(status -> {
+            Contact contact = contactRepository.findFirstByUserAndId(user, contactId).orElseThrow();
+            addressRepository.findFirstByContactAndId(contact, addressId).orElseThrow();
+        }));
+        long[] after = measure(addressId -> addressService.get(user, contactId, addressId));
+
+        compare(reporter, "get", before, after);
+    }
+
+    @Test
+    void updateLatency(TestReporter reporter) throws Exception {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        long[] before = measure(addressId -> transaction.executeWithoutResult(status -> {
+            Contact contact = contactRepository.findFirstByUserAndId(user, contactId).orElseThrow();
+            Address address = addressRepository.findFirstByContactAndId(contact, addressId).orElseThrow();
+            address.setCity("Bandung " + ThreadLocalRandom.current().nextInt());
+            addressRepository.save(address);
+        }));
+        long[] after = measure(addressId -> addressService.update(user, UpdateAddressRequest.builder()
+                .contactId(contactId)
+                .addressId(addressId)
+                .city("Bandung " + ThreadLocalRandom.current().nextInt())
+                .country("Indonesia")
+                .build()));
+
+        compare(reporter, "update", before, after);
+    }
+
+    private long[] measure(Operation operation) throws Exception {
+        // warm up connections and caches outside the measurement
+        for (int i = 0; i < 100; i++) {
+            operation.run(addressIds.get(i % ADDRESSES));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    long[] nanos = new long[OPERATIONS];
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        String addressId = addressIds.get(ThreadLocalRandom.current().nextInt(ADDRESSES));
+                        long start = System.nanoTime();
+                        operation.run(addressId);
+                        nanos[i] = System.nanoTime() - start;
+                    }
+                    return nanos;
+                }));
+            }
+
+            long[] all = new long[THREADS * OPERATIONS];
+            for (int t = 0; t < THREADS; t++) {
+                System.arraycopy(futures.get(t).get(), 0, all, t * OPERATIONS, OPERATIONS);
+            }
+            Arrays.sort(all);
+            return all;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void compare(TestReporter reporter, String name, long[] before, long[] after) {
+        assertEquals(before.length, after.length);
+        double beforeMean = Arrays.stream(before).average().orElse(0) / 1000;
+        double afterMean = Arrays.stream(after).average().orElse(0) / 1000;
+
+        reporter.publishEntry(name, String.format("%d threads: two queries mean %.0f us p50 %d us p99 %d us,"
+                        + " one statement mean %.0f us p50 %d us p99 %d us",
+                THREADS,
+                beforeMean, before[before.length / 2] / 1000, before[before.length * 99 / 100] / 1000,
+                afterMean, after[after.length / 2] / 1000, after[after.length * 99 / 100] / 1000));
+        assertTrue(afterMean < beforeMean, String.format("%s: one statement %.0f us, two queries %.0f us", name, afterMean, beforeMean));
+    }
+
+    private interface Operation {
+        void run(String addressId) throws Exception;
+    }
+}
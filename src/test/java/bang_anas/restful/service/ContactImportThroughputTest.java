@@ -0,0 +1,78 @@
+package bang_anas.restful.service;
+
+import bang_anas.restful.entity.User;
+import bang_anas.restful.model.ImportContactResponse;
+import bang_anas.restful.repository.AddressRepository;
+import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.security.BCrypt;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// rows per second of the bulk import against the local database, reported for docs/contact.md.
+// opt in: mvn test -Pperf
+@Tag("perf")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.show_sql=false")
+class ContactImportThroughputTest {
+
+    private static final int CONTACTS = 50_000;
+
+    @Autowired
+    private ContactImportService contactImportService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user = new User();
+        user.setUsername("test-anas");
+        user.setPassword(BCrypt.hashpw("test-password-anas", BCrypt.gensalt()));
+        user.setName("Test-Name-Anas");
+        user.setToken("test-token-anas");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 1000000);
+        userRepository.save(user);
+    }
+
+    @Test
+    void importThroughput(TestReporter reporter) throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < CONTACTS; i++) {
+            body.append("{\"firstName\":\"Kontak ").append(i)
+                    .append("\",\"lastName\":\"Impor\",\"email\":\"kontak").append(i)
+                    .append("@example.com\",\"phone\":\"0812").append(i).append("\"}\n");
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+
+        long start = System.nanoTime();
+        ImportContactResponse response = contactImportService.importContacts(user, new ByteArrayInputStream(bytes));
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        assertEquals(CONTACTS, response.getImported());
+        assertEquals(0, response.getFailed());
+        assertEquals(CONTACTS, contactRepository.count());
+
+        reporter.publishEntry("import", String.format("%d contacts in %.2f s, %.0f rows/s", CONTACTS, seconds, CONTACTS / seconds));
+    }
+}
@@ -0,0 +1,180 @@
+package bang_anas.restful.service;
+
+import bang_anas.restful.entity.Address;
+import bang_anas.restful.entity.Contact;
+import bang_anas.restful.entity.User;
+import bang_anas.restful.model.AddressResponse;
+import bang_anas.restful.model.ContactResponse;
+import bang_anas.restful.repository.AddressRepository;
+import bang_anas.restful.repository.ContactRepository;
+import bang_anas.restful.repository.UserRepository;
+import bang_anas.restful.security.BCrypt;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// heap allocated per read with managed entities (the old ContactService.get / AddressService.list)
+// vs the ContactView / AddressView projections, measured on the calling thread. opt in: mvn test -Pperf
+@Tag("perf")
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.show_sql=false"
+})
+class ContactProjectionAllocationTest {
+
+    private static final int WARMUP = 500;
+
+    private static final int ROUNDS = 2000;
+
+    @Autowired
+    private ContactService contactService;
+
+    @Autowired
+    private AddressService addressService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ContactRepository contactRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User user;
+
+    private String contactId;
+
+    @BeforeEach
+    void setUp() {
+        addressRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+
+        user = new User();
+        user.setUsername("test-anas");
+        user.setPassword(BCrypt.hashpw("test-password-anas", BCrypt.gensalt()));
+        user.setName("Test-Name-Anas");
+        user.setToken("test-token-anas");
+        user.setTokenExpiredAt(System.currentTimeMillis() + 1000000);
+        userRepository.save(user);
+
+        Contact contact = new Contact();
+        contact.setId(UUID.randomUUID().toString());
+        contact.setUser(user);
+        contact.setFirstName("anas");
+        contact.setLastName("Guege");
+        contact.setEmail("Nyueno@example.com");
+        contact.setPhone("9238423432");
+        contactRepository.save(contact);
+        contactId = contact.getId();
+
+        for (int i = 0; i < 10; i++) {
+            Address address = new Address();
+            address.setId(UUID.randomUUID().toString());
+            address.setContact(contact);
+            address.setStreet("jalan " + i);
+            address.setCity("Jakarta");
+            address.setProvince("DKI");
+            address.setCountry("Indonesia");
+            address.setPostalCode("12345");
+            addressRepository.save(address);
+        }
+    }
+
+    @Test
+    void contactGetAllocation(TestReporter reporter) {
+        TransactionTemplate readOnly = readOnlyTransaction();
+        Runnable entities = () -> readOnly.executeWithoutResult(status -> {
+            Contact contact = contactRepository.findFirstByUserAndId(user, contactId).orElseThrow();
+            ContactResponse.builder()
+                    .id(contact.getId())
+                    .firstName(contact.getFirstName())
+                    .lastName(contact.getLastName())
+                    .email(contact.getEmail())
+                    .phone(contact.getPhone())
+                    .build();
+        });
+        Runnable projection = () -> contactService.get(user, contactId);
+
+        compare(reporter, "contact get", entities, projection);
+    }
+
+    @Test
+    void addressListAllocation(TestReporter reporter) {
+        TransactionTemplate readOnly = readOnlyTransaction();
+        Runnable entities = () -> readOnly.executeWithoutResult(status -> {
+            Contact contact = contactRepository.findFirstByUserAndId(user, contactId).orElseThrow();
+            List<AddressResponse> responses = addressRepository.findAllByContact(contact).stream()
+                    .map(address -> AddressResponse.builder()
+                            .id(address.getId())
+                            .street(address.getStreet())
+                            .city(address.getCity())
+                            .province(address.getProvince())
+                            .country(address.getCountry())
+                            .postalCode(address.getPostalCode())
+                            .build())
+                    .toList();
+            assertEquals(10, responses.size());
+        });
+        Runnable projection = () -> assertEquals(10, addressService.list(user, contactId, null, null).getContent().size());
+
+        compare(reporter, "address list", entities, projection);
+    }
+
+    private void compare(TestReporter reporter, String name, Runnable entities, Runnable projection) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        long entityLoads = statistics.getEntityLoadCount();
+        long before = allocatedPerCall(entities);
+        assertTrue(statistics.getEntityLoadCount() > entityLoads);
+
+        entityLoads = statistics.getEntityLoadCount();
+        long after = allocatedPerCall(projection);
+        // the projections never materialize an entity
+        assertEquals(entityLoads, statistics.getEntityLoadCount());
+
+        reporter.publishEntry(name, "entities " + before + " bytes/op, projection " + after + " bytes/op");
+        assertTrue(after < before, name + ": projection " + after + " bytes/op, entities " + before + " bytes/op");
+    }
+
+    private long allocatedPerCall(Runnable runnable) {
+        for (int i = 0; i < WARMUP; i++) {
+            runnable.run();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            runnable.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - start) / ROUNDS;
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+}